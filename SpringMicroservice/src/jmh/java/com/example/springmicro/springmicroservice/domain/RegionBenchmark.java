@@ -0,0 +1,36 @@
+package com.example.springmicro.springmicroservice.domain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Region.findByLabel over the labels of a catalog, in varying case and including one that matches
+ * no region, as every imported tour looks up its region.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RegionBenchmark {
+    private static final String[] LABELS = {"Central Coast", "Southern California", "Northern California",
+            "Varies", "central coast", "NORTHERN CALIFORNIA", "Southern california", "Nowhere"};
+
+    private int next;
+
+    @Benchmark
+    public Region findByLabel() {
+        next = (next + 1) & (LABELS.length - 1);
+        return Region.findByLabel(LABELS[next]);
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.TourRating;
+import com.example.springmicro.springmicroservice.domain.TourRatingPk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The average rating of a tour: computed from the ratings with a stream, as /average once did, versus
+ * read from the RatingAggregate that RatingAggregateService keeps up to date, and the cost of keeping it
+ * up to date for one rating change.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RatingAggregateBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int ratings;
+
+    private List<TourRating> tourRatings;
+    private RatingAggregate aggregate;
+    private int nextScore;
+
+    @Setup
+    public void createRatings() {
+        Random random = new Random(42);
+        tourRatings = new ArrayList<>(ratings);
+        aggregate = RatingAggregate.EMPTY;
+        for (int customerId = 0; customerId < ratings; customerId++) {
+            int score = random.nextInt(RatingAggregate.MAX_SCORE + 1);
+            tourRatings.add(new TourRating(new TourRatingPk(null, customerId), score, null));
+            aggregate = aggregate.plus(score, 1);
+        }
+    }
+
+    @Benchmark
+    public double streamAverage() {
+        return tourRatings.stream().mapToInt(TourRating::getScore).average().orElse(0);
+    }
+
+    @Benchmark
+    public double aggregateAverage() {
+        return aggregate.getAverage();
+    }
+
+    @Benchmark
+    public double aggregateChange() {
+        nextScore = (nextScore + 1) % (RatingAggregate.MAX_SCORE + 1);
+        return aggregate.plus(nextScore, 1).getAverage();
+    }
+}
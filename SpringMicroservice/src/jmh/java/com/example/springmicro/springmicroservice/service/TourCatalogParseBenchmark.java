@@ -0,0 +1,98 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.TourPackage;
+import com.example.springmicro.springmicroservice.service.TourCatalogImporter.TourFromFile;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Reading a tour catalog the way TourCatalogImporter does: token by token, one TourFromFile per
+ * element of the array, optionally turned into a Tour. The catalogs are generated in the format of
+ * ExploreCalifornia.json.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TourCatalogParseBenchmark {
+    private static final String[] DIFFICULTIES = {"Easy", "Medium", "Difficult", "Varies"};
+    private static final String[] REGIONS = {"Central Coast", "Southern California", "Northern California", "Varies"};
+    private static final String TEXT = "The content for this field is only available in the course exercise files.";
+
+    @Param({"1000", "10000", "100000"})
+    private int tours;
+
+    private byte[] catalog;
+    private TourPackage tourPackage;
+
+    @Setup
+    public void generateCatalog() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator json = TourCatalogImporter.MAPPER.getFactory().createGenerator(out)) {
+            json.writeStartArray();
+            for (int i = 0; i < tours; i++) {
+                json.writeStartObject();
+                json.writeStringField("packageType", "Backpack Cal");
+                json.writeStringField("title", "Tour " + i);
+                json.writeStringField("blurb", TEXT);
+                json.writeStringField("description", TEXT);
+                json.writeStringField("bullets", TEXT);
+                json.writeStringField("difficulty", DIFFICULTIES[i % DIFFICULTIES.length]);
+                json.writeStringField("length", (1 + i % 7) + " days");
+                json.writeStringField("price", Integer.toString(100 + i % 2000));
+                json.writeStringField("region", REGIONS[i % REGIONS.length]);
+                json.writeStringField("keywords", "Hiking, National Parks, Big Sur");
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+        }
+        catalog = out.toByteArray();
+        tourPackage = new TourPackage("BC", "Backpack Cal");
+    }
+
+    @Benchmark
+    public int parse(Blackhole blackhole) throws IOException {
+        int count = 0;
+        try (JsonParser parser = TourCatalogImporter.MAPPER.getFactory().createParser(new ByteArrayInputStream(catalog))) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                blackhole.consume(TourCatalogImporter.MAPPER.readValue(parser, TourFromFile.class));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int parseToTours(Blackhole blackhole) throws IOException {
+        int count = 0;
+        try (JsonParser parser = TourCatalogImporter.MAPPER.getFactory().createParser(new ByteArrayInputStream(catalog))) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                blackhole.consume(TourCatalogImporter.MAPPER.readValue(parser, TourFromFile.class).toTour(tourPackage));
+                count++;
+            }
+        }
+        return count;
+    }
+}
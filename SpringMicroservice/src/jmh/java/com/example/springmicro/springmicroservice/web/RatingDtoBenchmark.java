@@ -0,0 +1,69 @@
+package com.example.springmicro.springmicroservice.web;
+
+import com.example.springmicro.springmicroservice.domain.TourRating;
+import com.example.springmicro.springmicroservice.domain.TourRatingPk;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/*
+ * A page of ratings turned into RatingDtos and written as JSON, with an ObjectMapper built the way
+ * Spring Boot builds the one of the message converters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RatingDtoBenchmark {
+
+    @Param({"20", "1000"})
+    private int pageSize;
+
+    private List<TourRating> ratings;
+    private List<RatingDto> dtos;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void createRatings() {
+        ratings = new ArrayList<>(pageSize);
+        for (int customerId = 0; customerId < pageSize; customerId++) {
+            ratings.add(new TourRating(new TourRatingPk(null, customerId), customerId % 6,
+                    customerId % 3 == 0 ? null : "Great tour, would book again " + customerId));
+        }
+        dtos = map();
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    @Benchmark
+    public List<RatingDto> map() {
+        return ratings.stream().map(RatingDto::new).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(dtos);
+    }
+
+    @Benchmark
+    public byte[] mapAndSerialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(map());
+    }
+}
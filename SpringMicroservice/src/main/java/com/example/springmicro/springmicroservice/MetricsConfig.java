@@ -0,0 +1,33 @@
+package com.example.springmicro.springmicroservice;
+
+import com.example.springmicro.springmicroservice.repository.StatementCountingDataSource;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Counts the SQL statements of every request on the main database.
+ *
+ * The dataSource bean, whether the plain pool or the read/write router, is wrapped in a
+ * StatementCountingDataSource before JPA and the JdbcTemplates get hold of it, so Hibernate and the
+ * batch writers are counted alike. SqlStatementMetricsFilter records the count per request.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public static BeanPostProcessor statementCountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if ("dataSource".equals(beanName) && bean instanceof DataSource
+                        && !(bean instanceof StatementCountingDataSource)) {
+                    return new StatementCountingDataSource((DataSource) bean);
+                }
+                return bean;
+            }
+        };
+    }
+}
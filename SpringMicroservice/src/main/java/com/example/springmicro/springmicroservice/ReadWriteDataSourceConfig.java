@@ -0,0 +1,89 @@
+package com.example.springmicro.springmicroservice;
+
+import com.example.springmicro.springmicroservice.repository.ReadWriteRoutingDataSource;
+import com.example.springmicro.springmicroservice.web.ReadYourWritesFilter;
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * Routes read-only transactions to a replica pool and the rest to the primary pool, when
+ * springmicroservice.datasource.replica.url is set; otherwise the single Spring Boot DataSource is used.
+ *
+ * The primary pool is configured by spring.datasource.*, the replica pool by
+ * springmicroservice.datasource.replica.* and is read-only, so a misrouted write fails instead of
+ * diverging from the primary. ReadYourWritesFilter keeps the reads of a client that just wrote on
+ * the primary.
+ *
+ * A connection is routed once, when it is opened. Spring holds the Hibernate connection for the whole
+ * session, which open-in-view stretches to the whole request, so a write would reuse the replica
+ * connection of a read earlier in the request. Here Hibernate releases it at the end of every
+ * transaction instead, and each transaction is routed on its own.
+ */
+@Configuration
+@ConditionalOnExpression("!'${springmicroservice.datasource.replica.url:}'.isEmpty()")
+public class ReadWriteDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    @ConfigurationProperties("springmicroservice.datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(DataSourceProperties properties,
+                                              @Value("${springmicroservice.datasource.replica.url}") String url,
+                                              @Value("${springmicroservice.datasource.replica.username:}") String username,
+                                              @Value("${springmicroservice.datasource.replica.password:}") String password) {
+        HikariDataSource dataSource = DataSourceBuilder.create().type(HikariDataSource.class).url(url)
+                .username(username.isEmpty() ? properties.determineUsername() : username)
+                .password(username.isEmpty() ? properties.determinePassword() : password)
+                .build();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        // fail over to the primary quickly rather than waiting for the default 30 s
+        dataSource.setConnectionTimeout(2000);
+        return dataSource;
+    }
+
+    @Bean
+    public ReadWriteRoutingDataSource readWriteRoutingDataSource(
+            HikariDataSource primaryDataSource, HikariDataSource replicaDataSource,
+            @Value("${springmicroservice.datasource.replica.max-lag-ms:1000}") long maxLagMillis,
+            @Value("${springmicroservice.datasource.replica.retry-ms:5000}") long retryMillis) {
+        return new ReadWriteRoutingDataSource(primaryDataSource, replicaDataSource, maxLagMillis, retryMillis);
+    }
+
+    @Bean
+    public ReadYourWritesFilter readYourWritesFilter(
+            @Value("${springmicroservice.datasource.replica.max-lag-ms:1000}") long maxLagMillis) {
+        return new ReadYourWritesFilter(maxLagMillis);
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer connectionPerTransactionCustomizer() {
+        return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource readWriteRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(readWriteRoutingDataSource);
+    }
+}
@@ -1,27 +1,21 @@
 package com.example.springmicro.springmicroservice;
 
-import com.example.springmicro.springmicroservice.domain.Difficulty;
-import com.example.springmicro.springmicroservice.domain.Region;
+import com.example.springmicro.springmicroservice.service.TourCatalogImporter;
 import com.example.springmicro.springmicroservice.service.TourPackageService;
 import com.example.springmicro.springmicroservice.service.TourService;
-import com.fasterxml.jackson.annotation.JsonAutoDetect;
-import com.fasterxml.jackson.annotation.PropertyAccessor;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.List;
 
 @SpringBootApplication
 public class SpringMicroserviceApplication implements CommandLineRunner {
 
-//	@Value("${springmicroservice.importFile}")
-//	private String importFile;
+	@Value("${springmicroservice.importfile}")
+	private String importFile;
 
 	@Autowired
 	private TourPackageService tourPackageService;
@@ -29,6 +23,9 @@ public class SpringMicroserviceApplication implements CommandLineRunner {
 	@Autowired
 	private TourService tourService;
 
+	@Autowired
+	private TourCatalogImporter tourCatalogImporter;
+
 	public static void main(String[] args) {
 		SpringApplication.run(SpringMicroserviceApplication.class, args);
 	}
@@ -37,7 +34,7 @@ public class SpringMicroserviceApplication implements CommandLineRunner {
 	public void run(String... args) throws Exception {
 		createTourPackages();
 		long numOfTourPackage = tourPackageService.total();
-		createTours("ExploreCalifornia.json");
+		createTours(importFile);
 		long numOfTours = tourService.total();
 	}
 
@@ -60,50 +57,6 @@ public class SpringMicroserviceApplication implements CommandLineRunner {
 	 * Create tour entities from an external file
 	 */
 	private void createTours(String fileToImport) throws IOException {
-		TourFromFile.read(fileToImport).forEach(importedTour ->
-				tourService.createTour(importedTour.getTitle(),
-						importedTour.getDescription(),
-						importedTour.getBlurb(),
-						importedTour.getPrice(),
-						importedTour.getLength(),
-						importedTour.getBullets(),
-						importedTour.getKeywords(),
-						importedTour.getPackageType(),
-						importedTour.getDifficulty(),
-						importedTour.getRegion()));
-	}
-
-	/*
-	* Helper class to access the data of JSON file
-	* */
-	private static class TourFromFile {
-		private String packageType, title, description, blurb, price, length,
-				bullets, keywords, difficulty, region;
-
-		static List<TourFromFile> read(String fileToImport) throws IOException {
-			return new ObjectMapper().setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
-					.readValue(new FileInputStream(fileToImport), new TypeReference<List<TourFromFile>>() {});
-		}
-		protected TourFromFile(){}
-
-		String getPackageType() { return packageType; }
-
-		String getTitle() { return title; }
-
-		String getDescription() { return description; }
-
-		String getBlurb() { return blurb; }
-
-		Integer getPrice() { return Integer.parseInt(price); }
-
-		String getLength() { return length; }
-
-		String getBullets() { return bullets; }
-
-		String getKeywords() { return keywords; }
-
-		Difficulty getDifficulty() { return Difficulty.valueOf(difficulty); }
-
-		Region getRegion() { return Region.findByLabel(region); }
+		tourCatalogImporter.importFile(fileToImport);
 	}
 }
@@ -0,0 +1,72 @@
+package com.example.springmicro.springmicroservice.domain;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * The last successful import of a tour catalog file: the SHA-256 of its content and when it was imported.
+ */
+@Entity
+public class ImportRecord {
+    @Id
+    private String source;
+
+    @Column(length = 64, nullable = false)
+    private String checksum;
+
+    @Column(nullable = false)
+    private Instant importedAt;
+
+    protected ImportRecord() {
+    }
+
+    /**
+     * @param source     name of the imported file
+     * @param checksum   hex SHA-256 of the imported content
+     * @param importedAt end of the import
+     */
+    public ImportRecord(String source, String checksum, Instant importedAt) {
+        this.source = source;
+        this.checksum = checksum;
+        this.importedAt = importedAt;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public Instant getImportedAt() {
+        return importedAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ImportRecord that = (ImportRecord) o;
+        return Objects.equals(source, that.source) &&
+                Objects.equals(checksum, that.checksum) &&
+                Objects.equals(importedAt, that.importedAt);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(source, checksum, importedAt);
+    }
+
+    @Override
+    public String toString() {
+        return "ImportRecord{" +
+                "source='" + source + '\'' +
+                ", checksum='" + checksum + '\'' +
+                ", importedAt=" + importedAt +
+                '}';
+    }
+}
@@ -1,19 +1,35 @@
 package com.example.springmicro.springmicroservice.domain;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.*;
 import java.util.Objects;
+
+/**
+ * A Tour of the catalog.
+ *
+ * The three long text columns are lazy (this needs the bytecode enhancement done by the build), so
+ * listings only read the short columns; equals, hashCode and toString leave them out for the same reason.
+ */
 @Entity
+@Table(indexes = @Index(name = "tour_title", columnList = "title"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "tour")
 public class Tour {
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "tour_seq")
+    @SequenceGenerator(name = "tour_seq", sequenceName = "tour_seq", allocationSize = 50)
     private Integer id;
 
     @Column
     private String title;
 
+    @Basic(fetch = FetchType.LAZY)
     @Column(length = 2000)
     private String description;
 
+    @Basic(fetch = FetchType.LAZY)
     @Column(length = 2000)
     private String blurb;
 
@@ -23,6 +39,7 @@ public class Tour {
     @Column
     private String duration;
 
+    @Basic(fetch = FetchType.LAZY)
     @Column(length = 2000)
     private String bullets;
 
@@ -58,6 +75,37 @@ public class Tour {
     protected Tour() {
     }
 
+    /**
+     * Copy the catalog content of another Tour, e.g. a newer version from an import.
+     *
+     * @param other the Tour to copy from
+     * @return true if any field changed
+     */
+    public boolean copyContent(Tour other) {
+        boolean same = Objects.equals(title, other.title) &&
+                Objects.equals(description, other.description) &&
+                Objects.equals(blurb, other.blurb) &&
+                Objects.equals(price, other.price) &&
+                Objects.equals(duration, other.duration) &&
+                Objects.equals(bullets, other.bullets) &&
+                Objects.equals(keywords, other.keywords) &&
+                Objects.equals(tourPackage, other.tourPackage) &&
+                difficulty == other.difficulty &&
+                region == other.region;
+        if (same) return false;
+        this.title = other.title;
+        this.description = other.description;
+        this.blurb = other.blurb;
+        this.price = other.price;
+        this.duration = other.duration;
+        this.bullets = other.bullets;
+        this.keywords = other.keywords;
+        this.tourPackage = other.tourPackage;
+        this.difficulty = other.difficulty;
+        this.region = other.region;
+        return true;
+    }
+
     public Integer getId() {
         return id;
     }
@@ -147,11 +195,8 @@ public class Tour {
         return "Tour{" +
                 "id=" + id +
                 ", title='" + title + '\'' +
-                ", description='" + description + '\'' +
-                ", blurb='" + blurb + '\'' +
                 ", price=" + price +
                 ", duration='" + duration + '\'' +
-                ", bullets='" + bullets + '\'' +
                 ", keywords='" + keywords + '\'' +
                 ", tourPackage=" + tourPackage +
                 ", difficulty=" + difficulty +
@@ -166,11 +211,8 @@ public class Tour {
         Tour tour = (Tour) o;
         return Objects.equals(id, tour.id) &&
                 Objects.equals(title, tour.title) &&
-                Objects.equals(description, tour.description) &&
-                Objects.equals(blurb, tour.blurb) &&
                 Objects.equals(price, tour.price) &&
                 Objects.equals(duration, tour.duration) &&
-                Objects.equals(bullets, tour.bullets) &&
                 Objects.equals(keywords, tour.keywords) &&
                 Objects.equals(tourPackage, tour.tourPackage) &&
                 difficulty == tour.difficulty &&
@@ -179,6 +221,6 @@ public class Tour {
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, title, description, blurb, price, duration, bullets, keywords, tourPackage, difficulty, region);
+        return Objects.hash(id, title, price, duration, keywords, tourPackage, difficulty, region);
     }
 }
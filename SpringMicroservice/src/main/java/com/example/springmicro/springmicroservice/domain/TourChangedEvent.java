@@ -0,0 +1,28 @@
+package com.example.springmicro.springmicroservice.domain;
+
+import java.util.List;
+
+/**
+ * Published after Tours have been created or updated.
+ */
+public class TourChangedEvent {
+    private final List<Tour> tours;
+
+    public TourChangedEvent(List<Tour> tours) {
+        this.tours = List.copyOf(tours);
+    }
+
+    /**
+     * @return the saved Tours, with their ids assigned
+     */
+    public List<Tour> getTours() {
+        return tours;
+    }
+
+    @Override
+    public String toString() {
+        return "TourChangedEvent{" +
+                "tours=" + tours.size() +
+                '}';
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.springmicro.springmicroservice.domain;
+
+import org.springframework.data.rest.core.config.Projection;
+
+/**
+ * The "summary" projection of a Tour, used for every Tour in Spring Data REST collection resources.
+ *
+ * It only reads the short columns, so listing Tours never loads the lazy text columns;
+ * the single Tour resource (or ?projection= on it) still returns everything.
+ */
+@Projection(name = "summary", types = Tour.class)
+public interface TourExcerpt {
+    String getTitle();
+
+    Integer getPrice();
+
+    String getDuration();
+
+    Region getRegion();
+
+    Difficulty getDifficulty();
+}
@@ -1,5 +1,9 @@
 package com.example.springmicro.springmicroservice.domain;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
@@ -9,6 +13,8 @@ import java.util.Objects;
  * A Classification of Tours.
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "tourPackage")
 public class TourPackage {
     @Id
     private String code;
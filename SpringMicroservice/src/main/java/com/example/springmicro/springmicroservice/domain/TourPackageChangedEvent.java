@@ -0,0 +1,23 @@
+package com.example.springmicro.springmicroservice.domain;
+
+/**
+ * Published after a TourPackage has been created or updated.
+ */
+public class TourPackageChangedEvent {
+    private final TourPackage tourPackage;
+
+    public TourPackageChangedEvent(TourPackage tourPackage) {
+        this.tourPackage = tourPackage;
+    }
+
+    public TourPackage getTourPackage() {
+        return tourPackage;
+    }
+
+    @Override
+    public String toString() {
+        return "TourPackageChangedEvent{" +
+                "tourPackage=" + tourPackage +
+                '}';
+    }
+}
@@ -2,14 +2,20 @@ package com.example.springmicro.springmicroservice.domain;
 import javax.persistence.Column;
 import javax.persistence.EmbeddedId;
 import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Version;
 import java.util.Objects;
 
 /**
  * Rating of a Tour by a Customer
+ * The (customer_id, tour_id) index serves the ratings of a customer in tour order.
+ * The version is bumped by every update, so concurrent updates of one rating cannot overwrite each other.
  *
  * Created by Mary Ellen Bowman
  */
 @Entity
+@Table(indexes = @Index(name = "tour_rating_customer_tour", columnList = "customerId, tour_id"))
 public class TourRating {
 
     @EmbeddedId
@@ -21,6 +27,11 @@ public class TourRating {
     @Column
     private String comment;
 
+    // null until persisted, which also tells Spring Data the rating is new; rows written over JDBC start at 0
+    @Version
+    @Column(columnDefinition = "integer default 0 not null")
+    private Integer version;
+
     /**
      * Create a fully initialized TourRating.
      *
@@ -43,6 +54,7 @@ public class TourRating {
                 "pk=" + pk +
                 ", score=" + score +
                 ", comment='" + comment + '\'' +
+                ", version=" + version +
                 '}';
     }
 
@@ -73,6 +85,10 @@ public class TourRating {
         return comment;
     }
 
+    public Integer getVersion() {
+        return version;
+    }
+
     public void setPk(TourRatingPk pk) {
         this.pk = pk;
     }
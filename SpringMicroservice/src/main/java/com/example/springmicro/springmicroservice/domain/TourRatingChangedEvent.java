@@ -0,0 +1,74 @@
+package com.example.springmicro.springmicroservice.domain;
+
+/**
+ * Published whenever a TourRating is created, updated or deleted.
+ *
+ * Carries the score before and after the change so listeners can maintain
+ * derived state without re-reading the ratings.
+ */
+public class TourRatingChangedEvent {
+    public enum Type { CREATED, UPDATED, DELETED }
+
+    private final Type type;
+    private final int tourId;
+    private final int customerId;
+    private final Integer oldScore;
+    private final Integer newScore;
+
+    private TourRatingChangedEvent(Type type, int tourId, int customerId, Integer oldScore, Integer newScore) {
+        this.type = type;
+        this.tourId = tourId;
+        this.customerId = customerId;
+        this.oldScore = oldScore;
+        this.newScore = newScore;
+    }
+
+    public static TourRatingChangedEvent created(int tourId, int customerId, int score) {
+        return new TourRatingChangedEvent(Type.CREATED, tourId, customerId, null, score);
+    }
+
+    public static TourRatingChangedEvent updated(int tourId, int customerId, int oldScore, int newScore) {
+        return new TourRatingChangedEvent(Type.UPDATED, tourId, customerId, oldScore, newScore);
+    }
+
+    public static TourRatingChangedEvent deleted(int tourId, int customerId, int score) {
+        return new TourRatingChangedEvent(Type.DELETED, tourId, customerId, score, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getTourId() {
+        return tourId;
+    }
+
+    public int getCustomerId() {
+        return customerId;
+    }
+
+    /**
+     * @return score before the change, null for a created rating
+     */
+    public Integer getOldScore() {
+        return oldScore;
+    }
+
+    /**
+     * @return score after the change, null for a deleted rating
+     */
+    public Integer getNewScore() {
+        return newScore;
+    }
+
+    @Override
+    public String toString() {
+        return "TourRatingChangedEvent{" +
+                "type=" + type +
+                ", tourId=" + tourId +
+                ", customerId=" + customerId +
+                ", oldScore=" + oldScore +
+                ", newScore=" + newScore +
+                '}';
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.springmicro.springmicroservice.domain;
+
+import java.util.Set;
+
+/**
+ * Published after buffered TourRatings have been written to the database, which is when the rating
+ * listings read from it change. The change itself was announced by a TourRatingChangedEvent before.
+ */
+public class TourRatingsWrittenEvent {
+    private final Set<Integer> tourIds;
+
+    public TourRatingsWrittenEvent(Set<Integer> tourIds) {
+        this.tourIds = Set.copyOf(tourIds);
+    }
+
+    /**
+     * @return ids of the tours whose ratings were written
+     */
+    public Set<Integer> getTourIds() {
+        return tourIds;
+    }
+
+    @Override
+    public String toString() {
+        return "TourRatingsWrittenEvent{" +
+                "tourIds=" + tourIds +
+                '}';
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.springmicro.springmicroservice.repository;
+
+/**
+ * Projection of a TourRating with the id and title of its Tour, for listing the ratings of a customer.
+ */
+public interface CustomerRatingSummary extends RatingSummary {
+    Integer getTourId();
+
+    String getTourTitle();
+}
@@ -0,0 +1,9 @@
+package com.example.springmicro.springmicroservice.repository;
+
+import com.example.springmicro.springmicroservice.domain.ImportRecord;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+@RepositoryRestResource(exported = false)
+public interface ImportRecordRepository extends CrudRepository<ImportRecord, String> {
+}
@@ -0,0 +1,17 @@
+package com.example.springmicro.springmicroservice.repository;
+
+/**
+ * Projection of the TourRating columns a RatingDto needs, also used to read a rating before a conditional update.
+ *
+ * Queries returning it select only these columns, so the Tour of the rating's
+ * primary key is never loaded.
+ */
+public interface RatingSummary {
+    Integer getScore();
+
+    String getComment();
+
+    Integer getCustomerId();
+
+    Integer getVersion();
+}
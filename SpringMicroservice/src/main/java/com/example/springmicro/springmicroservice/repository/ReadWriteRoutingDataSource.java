@@ -0,0 +1,170 @@
+package com.example.springmicro.springmicroservice.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Sends the connections of read-only transactions to a replica and everything else to the primary.
+ *
+ * The routing decision is made when the connection is opened, so this must sit behind a
+ * LazyConnectionDataSourceProxy: the transaction manager asks for its connection before the
+ * read-only flag of the transaction is set, and the proxy only opens it at the first statement.
+ *
+ * The replica may lag behind the primary by up to maxLagMillis. Reads that must see a write are kept
+ * on the primary per client, not globally: a thread serving a client binds it with bindClient, its
+ * reads stay on the primary until the time the client carries, and every write it commits moves that
+ * time to maxLagMillis after the commit and reports it back, to be handed to the client's next request.
+ * Reads of threads without a client (background jobs) go to the replica and may be that stale.
+ * When the replica cannot hand out a connection, reads fall back to the primary and the replica is
+ * not tried again for retryMillis.
+ */
+public class ReadWriteRoutingDataSource extends AbstractDataSource {
+    private static final Logger log = LoggerFactory.getLogger(ReadWriteRoutingDataSource.class);
+
+    public enum Route {PRIMARY, REPLICA}
+
+    private static final ThreadLocal<Client> CLIENT = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final long maxLagMillis;
+    private final long retryNanos;
+    private final AtomicLong replicaDownUntil = new AtomicLong(System.nanoTime());
+    private final AtomicLong primaryConnections = new AtomicLong();
+    private final AtomicLong replicaConnections = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica, long maxLagMillis, long retryMillis) {
+        this.primary = primary;
+        this.replica = replica;
+        this.maxLagMillis = maxLagMillis;
+        this.retryNanos = retryMillis * 1_000_000;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connect(DataSource::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return connect(dataSource -> dataSource.getConnection(username, password));
+    }
+
+    private Connection connect(ConnectionSource source) throws SQLException {
+        if (route() == Route.REPLICA) {
+            try {
+                Connection connection = source.open(replica);
+                replicaConnections.incrementAndGet();
+                return connection;
+            } catch (SQLFeatureNotSupportedException ex) {
+                // the pool does not take credentials (Hikari), the replica is fine
+                throw ex;
+            } catch (SQLException ex) {
+                replicaDownUntil.set(System.nanoTime() + retryNanos);
+                fallbacks.incrementAndGet();
+                log.warn("Replica unavailable, reading from the primary for {} ms: {}",
+                        retryNanos / 1_000_000, ex.getMessage());
+            }
+        }
+        primaryConnections.incrementAndGet();
+        return source.open(primary);
+    }
+
+    /**
+     * Bind the client the current thread serves, until unbindClient.
+     *
+     * @param primaryUntilMillis epoch millis until which the client's reads must see the primary
+     * @param onWriteCommitted   called with the new such time after each write of the client commits
+     */
+    public static void bindClient(long primaryUntilMillis, LongConsumer onWriteCommitted) {
+        CLIENT.set(new Client(primaryUntilMillis, onWriteCommitted));
+    }
+
+    public static void unbindClient() {
+        CLIENT.remove();
+    }
+
+    /**
+     * Decide where the connection requested now goes, and for a read-write transaction of a bound
+     * client start its read-your-writes window at commit. Connections outside a transaction go to the
+     * primary.
+     *
+     * @return REPLICA for a read-only transaction when the replica is up and the client has no write
+     * the replica may not have yet, else PRIMARY
+     */
+    public Route route() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return Route.PRIMARY;
+        }
+        Client client = CLIENT.get();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (client != null && TransactionSynchronizationManager.isSynchronizationActive()) {
+                // the window starts when the write becomes visible, at commit
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status == STATUS_COMMITTED) client.committed(System.currentTimeMillis() + maxLagMillis);
+                    }
+                });
+            }
+            return Route.PRIMARY;
+        }
+        if (client != null && System.currentTimeMillis() < client.primaryUntil
+                || System.nanoTime() - replicaDownUntil.get() < 0) {
+            return Route.PRIMARY;
+        }
+        return Route.REPLICA;
+    }
+
+    private static class Client {
+        private long primaryUntil;
+        private final LongConsumer onWriteCommitted;
+
+        Client(long primaryUntil, LongConsumer onWriteCommitted) {
+            this.primaryUntil = primaryUntil;
+            this.onWriteCommitted = onWriteCommitted;
+        }
+
+        void committed(long primaryUntil) {
+            this.primaryUntil = primaryUntil;
+            onWriteCommitted.accept(primaryUntil);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSource {
+        Connection open(DataSource dataSource) throws SQLException;
+    }
+
+    /**
+     * @return connections handed out by the primary pool
+     */
+    public long getPrimaryConnections() {
+        return primaryConnections.get();
+    }
+
+    /**
+     * @return connections handed out by the replica pool
+     */
+    public long getReplicaConnections() {
+        return replicaConnections.get();
+    }
+
+    /**
+     * @return reads sent to the primary because the replica failed to hand out a connection
+     */
+    public long getFallbacks() {
+        return fallbacks.get();
+    }
+}
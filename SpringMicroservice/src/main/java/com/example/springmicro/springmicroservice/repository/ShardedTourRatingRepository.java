@@ -0,0 +1,396 @@
+package com.example.springmicro.springmicroservice.repository;
+
+import com.example.springmicro.springmicroservice.domain.TourRating;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * TourRating storage partitioned by a hash of the tour id across N databases, the shards.
+ *
+ * All the ratings of a tour live on one shard, so single-tour reads and writes touch one database
+ * and run in a shard-local transaction. Lookups by customer and the score counts span every shard;
+ * they are sent to all shards in parallel and the results merged.
+ *
+ * Disabled unless springmicroservice.ratings.shards is set; the ratings then stay in the tour_rating
+ * table of the main database. The shard of a tour depends on the number of shards, so changing it
+ * means moving the stored ratings.
+ */
+@Repository
+public class ShardedTourRatingRepository {
+    private static final Logger log = LoggerFactory.getLogger(ShardedTourRatingRepository.class);
+
+    private static final String SUMMARY_COLUMNS = "score, comment, customer_id, version, tour_id";
+    private static final Map<String, String> SORT_COLUMNS = Map.of(
+            "score", "score", "comment", "comment", "customerId", "customer_id", "version", "version");
+
+    private final List<Shard> shards = new ArrayList<>();
+    private ExecutorService fanOut;
+
+    @Autowired
+    public ShardedTourRatingRepository(@Value("${springmicroservice.ratings.shards:0}") int shardCount,
+                                       @Value("${springmicroservice.ratings.shard-url:}") String urlTemplate,
+                                       @Value("${springmicroservice.ratings.shard-username:sa}") String username,
+                                       @Value("${springmicroservice.ratings.shard-password:}") String password,
+                                       @Value("${springmicroservice.ratings.batch-size:500}") int batchSize,
+                                       MeterRegistry meterRegistry) {
+        for (int i = 0; i < shardCount; i++) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("ratings-shard-" + i);
+            dataSource.setJdbcUrl(urlTemplate.replace("{shard}", Integer.toString(i)));
+            dataSource.setUsername(username);
+            dataSource.setPassword(password);
+            // the pool gauges (hikaricp.connections.*) of the shards, tagged pool=ratings-shard-i
+            dataSource.setMetricRegistry(meterRegistry);
+            shards.add(new Shard(dataSource, batchSize));
+        }
+        if (shardCount > 0) {
+            AtomicInteger threads = new AtomicInteger();
+            fanOut = Executors.newFixedThreadPool(shardCount, task -> {
+                Thread thread = new Thread(task, "ratings-shard-fan-out-" + threads.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+            shards.forEach(Shard::createSchema);
+            log.info("Tour ratings are sharded across {} databases", shardCount);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (fanOut != null) fanOut.shutdownNow();
+        shards.forEach(shard -> shard.dataSource.close());
+    }
+
+    public boolean isEnabled() {
+        return !shards.isEmpty();
+    }
+
+    /**
+     * @param tourId tour identifier
+     * @return index of the shard holding the ratings of the tour
+     */
+    public int shardOf(int tourId) {
+        // spread consecutive ids with a multiplicative hash, then take the remainder of its upper bits
+        return ((tourId * 0x9E3779B9) >>> 16) % shards.size();
+    }
+
+    /**
+     * Run work on the ratings of one tour in a transaction of its shard.
+     *
+     * @param tourId tour identifier
+     * @param work   reads and writes of that tour's ratings
+     * @return the result of the work
+     */
+    public <T> T inTransaction(int tourId, Supplier<T> work) {
+        return shard(tourId).transaction.execute(status -> work.get());
+    }
+
+    public Optional<RatingRow> findSummary(int tourId, int customerId) {
+        return shard(tourId).jdbcTemplate.query("select " + SUMMARY_COLUMNS + " from tour_rating " +
+                "where tour_id = ? and customer_id = ?", RatingRow.MAPPER, tourId, customerId).stream().findFirst();
+    }
+
+    public List<RatingSummary> findSummariesByTourId(int tourId) {
+        return new ArrayList<>(shard(tourId).jdbcTemplate.query("select " + SUMMARY_COLUMNS + " from tour_rating " +
+                "where tour_id = ?", RatingRow.MAPPER, tourId));
+    }
+
+    /**
+     * @param pageable page and sort; only score, comment, customerId and version can be sorted on
+     * @throws IllegalArgumentException for any other sort property
+     */
+    public Page<RatingSummary> findSummariesByTourId(int tourId, Pageable pageable) {
+        Shard shard = shard(tourId);
+        return inTransaction(tourId, () -> {
+            Long total = shard.jdbcTemplate.queryForObject("select count(*) from tour_rating where tour_id = ?",
+                    Long.class, tourId);
+            String sql = "select " + SUMMARY_COLUMNS + " from tour_rating where tour_id = ?" + orderBy(pageable.getSort());
+            List<RatingSummary> content = new ArrayList<>(pageable.isPaged()
+                    ? shard.jdbcTemplate.query(sql + " limit ? offset ?", RatingRow.MAPPER, tourId,
+                    pageable.getPageSize(), pageable.getOffset())
+                    : shard.jdbcTemplate.query(sql, RatingRow.MAPPER, tourId));
+            return new PageImpl<>(content, pageable, total);
+        });
+    }
+
+    public List<RatingSummary> findSummariesByTourIdAfterCustomer(int tourId, int customerId, int limit) {
+        return new ArrayList<>(shard(tourId).jdbcTemplate.query("select " + SUMMARY_COLUMNS + " from tour_rating " +
+                "where tour_id = ? and customer_id > ? order by customer_id limit ?",
+                RatingRow.MAPPER, tourId, customerId, limit));
+    }
+
+    /**
+     * Hand every rating of a tour to a consumer in customer order, reading the rows in chunks.
+     *
+     * @return number of ratings visited
+     */
+    public long forEachByTourId(int tourId, Consumer<RatingSummary> action) {
+        long[] count = {0};
+        Consumer<RatingSummary> counting = action.andThen(rating -> count[0]++);
+        shard(tourId).streaming.query("select " + SUMMARY_COLUMNS + " from tour_rating where tour_id = ? " +
+                "order by customer_id", (RowCallbackHandler) resultSet -> counting.accept(RatingRow.MAPPER.mapRow(resultSet, 0)),
+                tourId);
+        return count[0];
+    }
+
+    public List<Integer> findCustomerIdsByTourIdAndCustomerIdIn(int tourId, Collection<Integer> customerIds) {
+        if (customerIds.isEmpty()) return List.of();
+        String in = customerIds.stream().map(id -> "?").collect(Collectors.joining(", "));
+        List<Object> args = new ArrayList<>();
+        args.add(tourId);
+        args.addAll(customerIds);
+        return shard(tourId).jdbcTemplate.queryForList("select customer_id from tour_rating where tour_id = ? " +
+                "and customer_id in (" + in + ")", Integer.class, args.toArray());
+    }
+
+    /**
+     * Update a rating only if it still has the version that was read.
+     *
+     * @return number of rows updated, 0 if the rating changed or is gone
+     */
+    public int updateIfVersion(int tourId, int customerId, Integer score, String comment, int version) {
+        return shard(tourId).jdbcTemplate.update("update tour_rating set score = ?, comment = ?, version = version + 1 " +
+                "where tour_id = ? and customer_id = ? and version = ?", score, comment, tourId, customerId, version);
+    }
+
+    /**
+     * @return number of rows deleted, 0 if the rating is gone
+     */
+    public int delete(int tourId, int customerId) {
+        return shard(tourId).jdbcTemplate.update("delete from tour_rating where tour_id = ? and customer_id = ?",
+                tourId, customerId);
+    }
+
+    /**
+     * Insert new ratings in JDBC batches, one transaction per shard.
+     */
+    public void insertAll(Collection<TourRating> ratings) {
+        byShard(ratings).forEach((shard, batch) -> shard.transaction.executeWithoutResult(
+                status -> shard.batchRepository.insertAll(batch)));
+    }
+
+    /**
+     * Write ratings whether or not they exist yet, one transaction per shard; a failure leaves the
+     * batches of the other shards written.
+     */
+    public void upsertAll(Collection<TourRating> ratings) {
+        byShard(ratings).forEach((shard, batch) -> shard.transaction.executeWithoutResult(
+                status -> shard.batchRepository.upsertAll(batch)));
+    }
+
+    /**
+     * Count the ratings of every tour grouped by score, on all shards in parallel.
+     *
+     * @return one row per tour and score
+     */
+    public List<TourScoreCount> countByTourAndScore() {
+        return fanOut(shard -> shard.jdbcTemplate.query("select tour_id, score, count(*) from tour_rating " +
+                "group by tour_id, score", (resultSet, row) -> new ScoreCountRow(resultSet.getInt(1),
+                resultSet.getInt(2), resultSet.getLong(3)))).stream()
+                .flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    /**
+     * Seek the next ratings of a customer after a tour, in tour order, on all shards in parallel.
+     * Every shard returns its first limit rows and the sorted lists are merged.
+     *
+     * @return the next ratings, without tour titles
+     */
+    public List<RatingRow> findSummariesByCustomerIdAfterTour(int customerId, int tourId, int limit) {
+        return fanOut(shard -> shard.jdbcTemplate.query("select " + SUMMARY_COLUMNS + " from tour_rating " +
+                "where customer_id = ? and tour_id > ? order by tour_id limit ?",
+                RatingRow.MAPPER, customerId, tourId, limit)).stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparing(RatingRow::getTourId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private Shard shard(int tourId) {
+        return shards.get(shardOf(tourId));
+    }
+
+    private Map<Shard, List<TourRating>> byShard(Collection<TourRating> ratings) {
+        return ratings.stream().collect(Collectors.groupingBy(rating -> shard(rating.getPk().getTour().getId())));
+    }
+
+    private <T> List<T> fanOut(Function<Shard, T> query) {
+        List<Future<T>> futures = shards.stream().map(shard -> fanOut.submit(() -> query.apply(shard)))
+                .collect(Collectors.toList());
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Interrupted while querying the rating shards", ex);
+        } catch (ExecutionException ex) {
+            futures.forEach(future -> future.cancel(true));
+            if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+            throw new IllegalStateException(ex.getCause());
+        }
+        return results;
+    }
+
+    private static String orderBy(Sort sort) {
+        if (sort.isUnsorted()) return " order by customer_id";
+        return sort.stream().map(order -> {
+            String column = SORT_COLUMNS.get(order.getProperty());
+            if (column == null) throw new IllegalArgumentException("Cannot sort ratings by " + order.getProperty());
+            return column + (order.isAscending() ? " asc" : " desc");
+        }).collect(Collectors.joining(", ", " order by ", ""));
+    }
+
+    /**
+     * One shard: its pool, a JdbcTemplate, a transaction manager and the batch writer bound to it.
+     */
+    private static class Shard {
+        private final HikariDataSource dataSource;
+        private final JdbcTemplate jdbcTemplate;
+        private final JdbcTemplate streaming;
+        private final TransactionTemplate transaction;
+        private final TourRatingBatchRepository batchRepository;
+
+        Shard(HikariDataSource dataSource, int batchSize) {
+            this.dataSource = dataSource;
+            DataSource counting = new StatementCountingDataSource(dataSource);
+            this.jdbcTemplate = new JdbcTemplate(counting);
+            this.streaming = new JdbcTemplate(counting);
+            this.streaming.setFetchSize(500);
+            this.transaction = new TransactionTemplate(new DataSourceTransactionManager(counting));
+            this.batchRepository = new TourRatingBatchRepository(jdbcTemplate, batchSize);
+        }
+
+        void createSchema() {
+            jdbcTemplate.execute("create table if not exists tour_rating (tour_id integer not null, " +
+                    "customer_id integer not null, score integer not null, comment varchar(255), " +
+                    "version integer default 0 not null, primary key (tour_id, customer_id))");
+            jdbcTemplate.execute("create index if not exists tour_rating_customer_tour " +
+                    "on tour_rating (customer_id, tour_id)");
+        }
+    }
+
+    /**
+     * A rating read from a shard. Shards do not hold tours, so the title is only known once it has
+     * been looked up in the main database.
+     */
+    public static class RatingRow implements CustomerRatingSummary {
+        static final RowMapper<RatingRow> MAPPER = (resultSet, row) -> new RatingRow(resultSet.getInt(1),
+                resultSet.getString(2), resultSet.getInt(3), resultSet.getInt(4), resultSet.getInt(5), null);
+
+        private final Integer score;
+        private final String comment;
+        private final Integer customerId;
+        private final Integer version;
+        private final Integer tourId;
+        private final String tourTitle;
+
+        RatingRow(Integer score, String comment, Integer customerId, Integer version, Integer tourId,
+                  String tourTitle) {
+            this.score = score;
+            this.comment = comment;
+            this.customerId = customerId;
+            this.version = version;
+            this.tourId = tourId;
+            this.tourTitle = tourTitle;
+        }
+
+        /**
+         * @return a copy of this rating with the title of its tour
+         */
+        public RatingRow withTourTitle(String tourTitle) {
+            return new RatingRow(score, comment, customerId, version, tourId, tourTitle);
+        }
+
+        @Override
+        public Integer getScore() {
+            return score;
+        }
+
+        @Override
+        public String getComment() {
+            return comment;
+        }
+
+        @Override
+        public Integer getCustomerId() {
+            return customerId;
+        }
+
+        @Override
+        public Integer getVersion() {
+            return version;
+        }
+
+        @Override
+        public Integer getTourId() {
+            return tourId;
+        }
+
+        @Override
+        public String getTourTitle() {
+            return tourTitle;
+        }
+    }
+
+    private static class ScoreCountRow implements TourScoreCount {
+        private final Integer tourId;
+        private final Integer score;
+        private final Long total;
+
+        ScoreCountRow(Integer tourId, Integer score, Long total) {
+            this.tourId = tourId;
+            this.score = score;
+            this.total = total;
+        }
+
+        @Override
+        public Integer getTourId() {
+            return tourId;
+        }
+
+        @Override
+        public Integer getScore() {
+            return score;
+        }
+
+        @Override
+        public Long getTotal() {
+            return total;
+        }
+    }
+}
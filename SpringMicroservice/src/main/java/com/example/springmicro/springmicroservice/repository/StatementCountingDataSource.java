@@ -0,0 +1,72 @@
+package com.example.springmicro.springmicroservice.repository;
+
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * DataSource that counts the JDBC statements created on the current thread, so the SQL issued while
+ * serving one request can be measured. A statement counts once however often it is executed or batched,
+ * and whether it came from Hibernate or a JdbcTemplate.
+ */
+public class StatementCountingDataSource extends DelegatingDataSource {
+    private static final ThreadLocal<long[]> STATEMENTS = ThreadLocal.withInitial(() -> new long[1]);
+
+    public StatementCountingDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    /**
+     * Start counting the statements of the current thread from 0.
+     */
+    public static void reset() {
+        STATEMENTS.get()[0] = 0;
+    }
+
+    /**
+     * @return statements created on the current thread since the last reset
+     */
+    public static long count() {
+        return STATEMENTS.get()[0];
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return counting(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return counting(super.getConnection(username, password));
+    }
+
+    private static Connection counting(Connection target) {
+        return (Connection) Proxy.newProxyInstance(ConnectionProxy.class.getClassLoader(),
+                new Class<?>[]{ConnectionProxy.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getTargetConnection":
+                            return target;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "prepareStatement":
+                        case "prepareCall":
+                        case "createStatement":
+                            STATEMENTS.get()[0]++;
+                            break;
+                        default:
+                    }
+                    try {
+                        return method.invoke(target, args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getTargetException();
+                    }
+                });
+    }
+}
@@ -1,14 +1,21 @@
 package com.example.springmicro.springmicroservice.repository;
 
 import com.example.springmicro.springmicroservice.domain.TourPackage;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 import org.springframework.data.rest.core.annotation.RestResource;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
 import java.util.Optional;
 
+import static org.hibernate.annotations.QueryHints.CACHEABLE;
+
 @RepositoryRestResource(collectionResourceRel = "packages", path = "packages")
 public interface TourPackageRepository extends CrudRepository<TourPackage, String> {
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
+    @Transactional(readOnly = true)
     Optional<TourPackage> findByName(String name);
 
     @Override
@@ -0,0 +1,90 @@
+package com.example.springmicro.springmicroservice.repository;
+
+import com.example.springmicro.springmicroservice.domain.TourRating;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * JDBC access for TourRating writes that are too large to go through the EntityManager.
+ *
+ * TourRating has an assigned embedded id, so a JPA save is always a merge and costs a select per row;
+ * these inserts go straight to the table in JDBC batches.
+ */
+@Repository
+public class TourRatingBatchRepository {
+    private static final String INSERT_SQL =
+            "insert into tour_rating (tour_id, customer_id, score, comment, version) values (?, ?, ?, ?, 0)";
+    private static final String UPDATE_SQL =
+            "update tour_rating set score = ?, comment = ?, version = version + 1 where tour_id = ? and customer_id = ?";
+
+    private JdbcTemplate jdbcTemplate;
+    private int batchSize;
+
+    @Autowired
+    public TourRatingBatchRepository(JdbcTemplate jdbcTemplate,
+                                     @Value("${springmicroservice.ratings.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Lookup the stored score of a rating.
+     *
+     * @param tourId     tour identifier
+     * @param customerId customer identifier
+     * @return the score, empty if the rating is not stored
+     */
+    // not read-only, so it reads the primary rather than a lagging replica
+    public Optional<Integer> findScore(int tourId, int customerId) {
+        return jdbcTemplate.queryForList("select score from tour_rating where tour_id = ? and customer_id = ?",
+                Integer.class, tourId, customerId).stream().findFirst();
+    }
+
+    /**
+     * Insert new TourRatings in JDBC batches.
+     *
+     * @param ratings ratings that do not exist yet
+     */
+    public void insertAll(Collection<TourRating> ratings) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, ratings, batchSize, (ps, rating) -> {
+            ps.setInt(1, rating.getPk().getTour().getId());
+            ps.setInt(2, rating.getPk().getCustomerId());
+            ps.setInt(3, rating.getScore());
+            ps.setString(4, rating.getComment());
+        });
+    }
+
+    /**
+     * Write TourRatings whether or not they exist yet: one batch of updates, then one batch of
+     * inserts for the rows the updates did not find, in a single transaction.
+     *
+     * @param ratings ratings to write, at most one per tour and customer
+     */
+    @Transactional
+    public void upsertAll(Collection<TourRating> ratings) {
+        int[][] updated = jdbcTemplate.batchUpdate(UPDATE_SQL, ratings, batchSize, (ps, rating) -> {
+            ps.setInt(1, rating.getScore());
+            ps.setString(2, rating.getComment());
+            ps.setInt(3, rating.getPk().getTour().getId());
+            ps.setInt(4, rating.getPk().getCustomerId());
+        });
+        List<TourRating> missing = new ArrayList<>();
+        Iterator<TourRating> iterator = ratings.iterator();
+        for (int[] batch : updated) {
+            for (int count : batch) {
+                TourRating rating = iterator.next();
+                if (count == 0) missing.add(rating);
+            }
+        }
+        insertAll(missing);
+    }
+}
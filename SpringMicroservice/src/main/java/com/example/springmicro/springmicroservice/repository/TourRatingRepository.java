@@ -4,32 +4,185 @@ import com.example.springmicro.springmicroservice.domain.TourRating;
 import com.example.springmicro.springmicroservice.domain.TourRatingPk;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.annotations.QueryHints.FETCH_SIZE;
+import static org.hibernate.annotations.QueryHints.READ_ONLY;
 
 @RepositoryRestResource(exported = false) // don't want this repository to be exprosed to Spring DATA REST
 public interface TourRatingRepository extends CrudRepository<TourRating, TourRatingPk> {
-    /**
-     * Lookup all the TourRatings for a tour.
-     *
-     * @param tourId is the tour Identifier
-     * @return a List of any found TourRatings
-     */
-    List<TourRating> findByPkTourId(Integer tourId);
-
     /**
      * Lookup a TourRating by the TourId and Customer Id
      * @param tourId tour identifier
      * @param customerId customer identifier
      * @return Optional of found TourRatings.
      */
+    @Transactional(readOnly = true)
     Optional<TourRating> findByPkTourIdAndPkCustomerId(Integer tourId, Integer customerId);
 
-    Optional<TourRating> findByPkCustomerId(Integer customerId);
+    /**
+     * Seek the next ratings of a customer after a tour, in tour order, with the title of each tour.
+     * Only the needed columns are selected, so no Tour is loaded.
+     *
+     * @param customerId customer identifier
+     * @param tourId     tour identifier of the last row already returned
+     * @param pageable   limit of the page, only its size is used
+     * @return the next CustomerRatingSummaries
+     */
+    @Query("select r.score as score, r.comment as comment, r.pk.customerId as customerId, r.version as version, " +
+            "t.id as tourId, t.title as tourTitle " +
+            "from TourRating r join r.pk.tour t where r.pk.customerId = :customerId and r.pk.tour.id > :tourId " +
+            "order by r.pk.tour.id")
+    @Transactional(readOnly = true)
+    List<CustomerRatingSummary> findSummariesByCustomerIdAfterTour(@Param("customerId") Integer customerId,
+                                                                   @Param("tourId") Integer tourId,
+                                                                   Pageable pageable);
+
+    /**
+     * Lookup the score, comment and version of a rating without loading the TourRating or its Tour.
+     *
+     * @param tourId     tour identifier
+     * @param customerId customer identifier
+     * @return the rating, if any
+     */
+    @Query("select r.score as score, r.comment as comment, r.pk.customerId as customerId, r.version as version " +
+            "from TourRating r where r.pk.tour.id = :tourId and r.pk.customerId = :customerId")
+    @Transactional(readOnly = true)
+    Optional<RatingSummary> findSummaryByTourIdAndCustomerId(@Param("tourId") Integer tourId,
+                                                             @Param("customerId") Integer customerId);
+
+    /**
+     * Update a rating in one statement if it still has the expected version, and bump the version.
+     *
+     * @param tourId     tour identifier
+     * @param customerId customer identifier
+     * @param score      new score
+     * @param comment    new comment
+     * @param version    version the rating must have
+     * @return 1 if the rating was updated, 0 if it does not exist or has another version
+     */
+    @Transactional
+    @Modifying
+    @Query("update TourRating r set r.score = :score, r.comment = :comment, r.version = r.version + 1 " +
+            "where r.pk.tour.id = :tourId and r.pk.customerId = :customerId and r.version = :version")
+    int updateIfVersion(@Param("tourId") Integer tourId, @Param("customerId") Integer customerId,
+                        @Param("score") Integer score, @Param("comment") String comment,
+                        @Param("version") Integer version);
+
+    /**
+     * Delete a rating in one statement.
+     *
+     * @param tourId     tour identifier
+     * @param customerId customer identifier
+     * @return 1 if the rating was deleted, 0 if it was already gone
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from TourRating r where r.pk.tour.id = :tourId and r.pk.customerId = :customerId")
+    int deleteByTourIdAndCustomerId(@Param("tourId") Integer tourId, @Param("customerId") Integer customerId);
+
+    /**
+     * Lookup which of the given customers already rated a tour.
+     *
+     * @param tourId      tour identifier
+     * @param customerIds candidate customer identifiers
+     * @return the customer identifiers that have a rating for the tour
+     */
+    @Query("select r.pk.customerId from TourRating r where r.pk.tour.id = :tourId and r.pk.customerId in :customerIds")
+    @Transactional(readOnly = true)
+    List<Integer> findCustomerIdsByTourIdAndCustomerIdIn(@Param("tourId") Integer tourId,
+                                                         @Param("customerIds") Collection<Integer> customerIds);
+
+    /**
+     * Lookup the RatingSummaries of a tour without loading the Tour.
+     *
+     * @param tourId tour identifier
+     * @return a List of any found RatingSummaries
+     */
+    @Query("select r.score as score, r.comment as comment, r.pk.customerId as customerId, r.version as version " +
+            "from TourRating r where r.pk.tour.id = :tourId")
+    @Transactional(readOnly = true)
+    List<RatingSummary> findSummariesByTourId(@Param("tourId") Integer tourId);
+
+    /**
+     * Lookup a page of RatingSummaries of a tour without loading the Tour.
+     *
+     * @param tourId   tour identifier
+     * @param pageable page and sort
+     * @return the page
+     */
+    @Query(value = "select r.score as score, r.comment as comment, r.pk.customerId as customerId, r.version as version " +
+            "from TourRating r where r.pk.tour.id = :tourId",
+            countQuery = "select count(r) from TourRating r where r.pk.tour.id = :tourId")
+    @Transactional(readOnly = true)
+    Page<RatingSummary> findSummariesByTourId(@Param("tourId") Integer tourId, Pageable pageable);
+
+    /**
+     * Seek the next RatingSummaries of a tour after a customer, in customer order.
+     * Returning a List (not a Page) means no count query is issued.
+     *
+     * @param tourId     tour identifier
+     * @param customerId customer identifier of the last row already returned
+     * @param pageable   limit of the page, only its size is used
+     * @return the next RatingSummaries
+     */
+    @Query("select r.score as score, r.comment as comment, r.pk.customerId as customerId, r.version as version " +
+            "from TourRating r where r.pk.tour.id = :tourId and r.pk.customerId > :customerId " +
+            "order by r.pk.customerId")
+    @Transactional(readOnly = true)
+    List<RatingSummary> findSummariesByTourIdAfterCustomer(@Param("tourId") Integer tourId,
+                                                           @Param("customerId") Integer customerId,
+                                                           Pageable pageable);
 
-    Page<TourRating> findByPkTourId(Integer id, Pageable pageable);
+    /**
+     * Stream the RatingSummaries of a tour in customer order.
+     * Rows are fetched from the cursor in chunks of the fetch size; the caller must consume
+     * the Stream inside a transaction and close it.
+     *
+     * @param tourId tour identifier
+     * @return a Stream of RatingSummaries
+     */
+    @QueryHints({
+            @QueryHint(name = FETCH_SIZE, value = "500"),
+            @QueryHint(name = READ_ONLY, value = "true")
+    })
+    @Query("select r.score as score, r.comment as comment, r.pk.customerId as customerId, r.version as version " +
+            "from TourRating r where r.pk.tour.id = :tourId order by r.pk.customerId")
+    @Transactional(readOnly = true)
+    Stream<RatingSummary> streamSummariesByTourId(@Param("tourId") Integer tourId);
+
+    /**
+     * Check whether a customer rated a tour, without loading either.
+     *
+     * @param tourId     tour identifier
+     * @param customerId customer identifier
+     * @return true if the rating exists
+     */
+    @Query("select case when count(r) > 0 then true else false end " +
+            "from TourRating r where r.pk.tour.id = :tourId and r.pk.customerId = :customerId")
+    @Transactional(readOnly = true)
+    boolean existsByTourIdAndCustomerId(@Param("tourId") Integer tourId, @Param("customerId") Integer customerId);
+
+    /**
+     * Count the ratings of every tour grouped by score.
+     *
+     * @return one row per tour and score
+     */
+    @Query("select r.pk.tour.id as tourId, r.score as score, count(r) as total " +
+            "from TourRating r group by r.pk.tour.id, r.score")
+    @Transactional(readOnly = true)
+    List<TourScoreCount> countByTourAndScore();
 }
 
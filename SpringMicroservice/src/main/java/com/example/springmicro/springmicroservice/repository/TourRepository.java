@@ -1,17 +1,76 @@
 package com.example.springmicro.springmicroservice.repository;
 
 import com.example.springmicro.springmicroservice.domain.Tour;
+import com.example.springmicro.springmicroservice.domain.TourExcerpt;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 import org.springframework.data.rest.core.annotation.RestResource;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 
+import static org.hibernate.annotations.QueryHints.CACHEABLE;
+
+@RepositoryRestResource(excerptProjection = TourExcerpt.class)
 public interface TourRepository extends PagingAndSortingRepository<Tour, Integer> {
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
+    @Transactional(readOnly = true)
     Page<Tour> findByTourPackageCode(String code, Pageable pageable);
 
+    /**
+     * Seek the next Tours after an id, in id order, without a count query.
+     *
+     * @param id       id of the last Tour already returned
+     * @param pageable limit of the page, only its size is used
+     * @return the next Tours
+     */
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    List<Tour> findByIdGreaterThanOrderByIdAsc(Integer id, Pageable pageable);
+
+    /**
+     * Seek the next Tours after an id, in id order, with their lazy text columns loaded by the same query.
+     *
+     * @param id       id of the last Tour already returned
+     * @param pageable limit of the page, only its size is used
+     * @return the next Tours
+     */
+    @RestResource(exported = false)
+    @Query("select t from Tour t fetch all properties where t.id > :id order by t.id")
+    @Transactional(readOnly = true)
+    List<Tour> findWithTextByIdGreaterThan(@Param("id") Integer id, Pageable pageable);
+
+    /**
+     * Lookup the Tours with one of the given titles, with their lazy text columns loaded by the same query.
+     *
+     * @param titles tour titles
+     * @return the found Tours
+     */
+    @RestResource(exported = false)
+    @Query("select t from Tour t fetch all properties where t.title in :titles")
+    @Transactional(readOnly = true)
+    List<Tour> findWithTextByTitleIn(@Param("titles") Collection<String> titles);
+
+    /**
+     * Seek the next Tours of a TourPackage after an id, in id order, without a count query.
+     *
+     * @param code     tour package code
+     * @param id       id of the last Tour already returned
+     * @param pageable limit of the page, only its size is used
+     * @return the next Tours
+     */
+    @RestResource(exported = false)
+    @Transactional(readOnly = true)
+    List<Tour> findByTourPackageCodeAndIdGreaterThanOrderByIdAsc(String code, Integer id, Pageable pageable);
+
     @Override
     @RestResource(exported = false)
     <S extends Tour> S save(S entity);
@@ -0,0 +1,12 @@
+package com.example.springmicro.springmicroservice.repository;
+
+/**
+ * Number of ratings with a given score for a tour.
+ */
+public interface TourScoreCount {
+    Integer getTourId();
+
+    Integer getScore();
+
+    Long getTotal();
+}
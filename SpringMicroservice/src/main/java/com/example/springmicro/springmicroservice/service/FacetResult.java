@@ -0,0 +1,35 @@
+package com.example.springmicro.springmicroservice.service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tours matching a facet filter, plus the number of matches every facet value would have
+ * given the filters on the other facets.
+ */
+public class FacetResult {
+    private final int total;
+    private final List<TourSummary> tours;
+    private final Map<String, Map<String, Integer>> counts;
+
+    FacetResult(int total, List<TourSummary> tours, Map<String, Map<String, Integer>> counts) {
+        this.total = total;
+        this.tours = tours;
+        this.counts = counts;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public List<TourSummary> getTours() {
+        return tours;
+    }
+
+    /**
+     * @return facet name -> facet value -> number of matching tours
+     */
+    public Map<String, Map<String, Integer>> getCounts() {
+        return counts;
+    }
+}
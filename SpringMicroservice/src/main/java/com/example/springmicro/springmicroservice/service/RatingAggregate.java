@@ -0,0 +1,97 @@
+package com.example.springmicro.springmicroservice.service;
+
+import java.util.Arrays;
+
+/**
+ * Immutable snapshot of the ratings of one tour: count, sum, min and max.
+ *
+ * Scores are bounded to 0-5, so the aggregate keeps a count per score; that lets
+ * min and max stay exact when a rating is removed.
+ */
+public class RatingAggregate {
+    public static final int MAX_SCORE = 5;
+
+    static final RatingAggregate EMPTY = new RatingAggregate(new long[MAX_SCORE + 1], 0, 0);
+
+    private final long[] scoreCounts;
+    private final long count;
+    private final long sum;
+
+    private RatingAggregate(long[] scoreCounts, long count, long sum) {
+        this.scoreCounts = scoreCounts;
+        this.count = count;
+        this.sum = sum;
+    }
+
+    /**
+     * @return a new aggregate with {@code delta} ratings of {@code score} added (or removed when negative)
+     * @throws IllegalStateException if more ratings of the score are removed than were counted, which means
+     *                               the aggregate no longer matches the stored ratings
+     */
+    RatingAggregate plus(int score, long delta) {
+        if (score < 0 || score > MAX_SCORE) {
+            throw new IllegalArgumentException("Score out of range " + score);
+        }
+        if (scoreCounts[score] + delta < 0) {
+            throw new IllegalStateException("Cannot remove " + -delta + " ratings of score " + score
+                    + " from " + scoreCounts[score]);
+        }
+        long[] counts = Arrays.copyOf(scoreCounts, scoreCounts.length);
+        counts[score] += delta;
+        long newCount = 0, newSum = 0;
+        for (int s = 0; s <= MAX_SCORE; s++) {
+            newCount += counts[s];
+            newSum += s * counts[s];
+        }
+        return new RatingAggregate(counts, newCount, newSum);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public double getAverage() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @return number of ratings of every score, indexed by score
+     */
+    public long[] getHistogram() {
+        return scoreCounts.clone();
+    }
+
+    /**
+     * @return lowest score, -1 when there are no ratings
+     */
+    public int getMin() {
+        for (int s = 0; s <= MAX_SCORE; s++) {
+            if (scoreCounts[s] > 0) return s;
+        }
+        return -1;
+    }
+
+    /**
+     * @return highest score, -1 when there are no ratings
+     */
+    public int getMax() {
+        for (int s = MAX_SCORE; s >= 0; s--) {
+            if (scoreCounts[s] > 0) return s;
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "RatingAggregate{" +
+                "count=" + count +
+                ", sum=" + sum +
+                ", min=" + getMin() +
+                ", max=" + getMax() +
+                '}';
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.TourRatingChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Keeps a RatingAggregate per tour, updated from TourRatingChangedEvents,
+ * so rating statistics are served without reading the ratings.
+ *
+ * Updates go through ConcurrentHashMap.compute, which only locks the bin of the
+ * tour being changed, and swap in a new immutable aggregate, so readers never block.
+ *
+ * A rebuild fills a new map and swaps it in, so readers keep seeing the previous aggregates meanwhile.
+ * The changes received while it queries the ratings are recorded and replayed onto the new map before
+ * the swap; updates hold the read side of a lock that the swap takes exclusively, so every change lands
+ * either in the replay or in the new map.
+ *
+ * A change that would remove a rating the aggregate never counted means the aggregates drifted from the
+ * stored ratings; it is logged, the aggregate of the tour is left as it was and a rebuild is started.
+ */
+@Service
+public class RatingAggregateService {
+    private static final Logger log = LoggerFactory.getLogger(RatingAggregateService.class);
+
+    private final ReadWriteLock swap = new ReentrantReadWriteLock();
+
+    private volatile ConcurrentMap<Integer, RatingAggregate> aggregates = new ConcurrentHashMap<>();
+    // changes received while a rebuild runs, null when none does; guarded by swap
+    private Queue<TourRatingChangedEvent> replay;
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+
+    private TourRatingService tourRatingService;
+
+    @Autowired
+    public RatingAggregateService(TourRatingService tourRatingService) {
+        this.tourRatingService = tourRatingService;
+    }
+
+    /**
+     * Lookup the aggregate of a tour.
+     *
+     * @param tourId tour identifier
+     * @return the aggregate, empty if the tour has no ratings
+     */
+    public Optional<RatingAggregate> get(int tourId) {
+        return Optional.ofNullable(aggregates.get(tourId)).filter(aggregate -> aggregate.getCount() > 0);
+    }
+
+    /**
+     * Score histogram of a tour.
+     *
+     * @param tourId tour identifier
+     * @return number of ratings of every score, indexed by score; all zero if the tour has no ratings
+     */
+    public long[] histogram(int tourId) {
+        return aggregates.getOrDefault(tourId, RatingAggregate.EMPTY).getHistogram();
+    }
+
+    /**
+     * Visit the aggregate of every tour that has ratings.
+     *
+     * @param action called with the tour id and its aggregate
+     */
+    public void forEach(BiConsumer<Integer, RatingAggregate> action) {
+        aggregates.forEach((tourId, aggregate) -> {
+            if (aggregate.getCount() > 0) action.accept(tourId, aggregate);
+        });
+    }
+
+    /**
+     * Recompute every aggregate from the stored ratings with a single grouped query.
+     * Runs before the ready listeners that are built from the aggregates.
+     *
+     * A change committed just before the query but received after it started is counted twice; the
+     * window is the time between a commit and its event, the query itself is covered by the replay.
+     */
+    @Order(0)
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        swap.writeLock().lock();
+        try {
+            replay = new ConcurrentLinkedQueue<>();
+        } finally {
+            swap.writeLock().unlock();
+        }
+        ConcurrentMap<Integer, RatingAggregate> rebuilt = new ConcurrentHashMap<>();
+        try {
+            tourRatingService.countByTourAndScore().forEach(row ->
+                    rebuilt.merge(row.getTourId(), RatingAggregate.EMPTY.plus(row.getScore(), row.getTotal()),
+                            (existing, added) -> existing.plus(row.getScore(), row.getTotal())));
+        } catch (RuntimeException ex) {
+            stopRecording();
+            throw ex;
+        }
+        int replayed;
+        swap.writeLock().lock();
+        try {
+            replayed = replay.size();
+            replay.forEach(event -> apply(rebuilt, event));
+            replay = null;
+            aggregates = rebuilt;
+        } finally {
+            swap.writeLock().unlock();
+        }
+        log.info("Rebuilt rating aggregates for {} tours, replaying {} changes", rebuilt.size(), replayed);
+    }
+
+    private void stopRecording() {
+        swap.writeLock().lock();
+        try {
+            replay = null;
+        } finally {
+            swap.writeLock().unlock();
+        }
+    }
+
+    @Order(0)
+    @EventListener
+    public void onRatingChanged(TourRatingChangedEvent event) {
+        swap.readLock().lock();
+        try {
+            if (replay != null) replay.add(event);
+            if (apply(aggregates, event)) return;
+        } finally {
+            swap.readLock().unlock();
+        }
+        scheduleRebuild();
+    }
+
+    /*
+     * Rebuild on another thread, so the request that published the change is not held up;
+     * drifts detected while one is scheduled share it
+     */
+    private void scheduleRebuild() {
+        if (!rebuildScheduled.compareAndSet(false, true)) return;
+        Thread rebuilder = new Thread(() -> {
+            rebuildScheduled.set(false);
+            try {
+                rebuild();
+            } catch (RuntimeException ex) {
+                log.error("Rebuild of drifted rating aggregates failed", ex);
+            }
+        }, "rating-aggregate-rebuild");
+        rebuilder.setDaemon(true);
+        rebuilder.start();
+    }
+
+    /*
+     * @return false if the change does not fit the aggregate, which is then left unchanged
+     */
+    private static boolean apply(ConcurrentMap<Integer, RatingAggregate> aggregates, TourRatingChangedEvent event) {
+        try {
+            aggregates.compute(event.getTourId(), (tourId, aggregate) -> {
+                RatingAggregate updated = aggregate == null ? RatingAggregate.EMPTY : aggregate;
+                if (event.getOldScore() != null)
+                    updated = updated.plus(event.getOldScore(), -1);
+                if (event.getNewScore() != null)
+                    updated = updated.plus(event.getNewScore(), 1);
+                return updated;
+            });
+            return true;
+        } catch (IllegalStateException ex) {
+            log.error("Rating aggregate of tour {} does not match {}: {}", event.getTourId(), event, ex.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.TourRatingChangedEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pushes the rating changes of a tour to its Server-Sent Events subscribers.
+ *
+ * Every TourRatingChangedEvent becomes a "rating" event followed by an "aggregate" event with the
+ * tour's new RatingAggregate, each serialized once for all subscribers. The publishing thread only
+ * offers the events to a bounded queue per subscriber; a small pool of sender threads drains the
+ * queues to the connections. Aggregates are snapshots, so only the latest one waits to be sent and a
+ * burst of changes (e.g. a bulk create) costs one queue slot per rating.
+ *
+ * The connections are written with non-blocking servlet output: a sender writes while the connection
+ * can take more and leaves a subscriber whose client is not reading until the container reports it
+ * writable again, so no thread ever waits on a slow client. A subscriber whose queue is full, or whose
+ * connection has not been writable for send-timeout, is too slow to keep up and is disconnected, so it
+ * cannot hold back the others; clients reconnect and start from the current aggregate. A heartbeat
+ * comment keeps idle connections open and finds the closed and stalled ones.
+ */
+@Service
+public class RatingEventBroadcaster {
+    private static final Logger log = LoggerFactory.getLogger(RatingEventBroadcaster.class);
+    private static final Frame HEARTBEAT = new Frame(":heartbeat\n\n");
+
+    private final ConcurrentMap<Integer, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final AtomicLong disconnected = new AtomicLong();
+
+    private RatingAggregateService ratingAggregateService;
+    private ObjectMapper objectMapper;
+    private int bufferSize;
+    private int maxSubscribers;
+    private long timeoutMillis;
+    private long sendTimeoutNanos;
+    private ExecutorService senders;
+    private ScheduledExecutorService heartbeat;
+
+    @Autowired
+    public RatingEventBroadcaster(RatingAggregateService ratingAggregateService, ObjectMapper objectMapper,
+                                  @Value("${springmicroservice.ratings.events.buffer-size:1000}") int bufferSize,
+                                  @Value("${springmicroservice.ratings.events.max-subscribers:10000}") int maxSubscribers,
+                                  @Value("${springmicroservice.ratings.events.timeout-ms:1800000}") long timeoutMillis,
+                                  @Value("${springmicroservice.ratings.events.heartbeat-ms:15000}") long heartbeatMillis,
+                                  @Value("${springmicroservice.ratings.events.send-timeout-ms:10000}") long sendTimeoutMillis,
+                                  @Value("${springmicroservice.ratings.events.sender-threads:4}") int senderThreads) {
+        this.ratingAggregateService = ratingAggregateService;
+        this.objectMapper = objectMapper;
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        this.timeoutMillis = timeoutMillis;
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+        this.senders = Executors.newFixedThreadPool(senderThreads, daemonThreads("rating-events-sender-"));
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(daemonThreads("rating-events-heartbeat-"));
+        heartbeat.scheduleAtFixedRate(() -> subscribers.values().forEach(tour -> tour.forEach(
+                subscriber -> subscriber.offer(HEARTBEAT))), heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threads = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, prefix + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Subscribe a request to the rating events of a tour, starting with its current aggregate. The request
+     * is put in asynchronous mode and its response streams the events until the client goes away, it falls
+     * behind, timeout-ms passes or the application stops.
+     *
+     * @param tourId   tour identifier
+     * @param request  the request of the subscriber
+     * @param response its response, nothing written yet
+     * @throws RejectedExecutionException if max-subscribers connections are open
+     * @throws IOException                if the response cannot be written
+     */
+    public void subscribe(int tourId, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new RejectedExecutionException("Too many rating event subscribers, try again later");
+        }
+        Subscriber subscriber;
+        try {
+            response.setContentType(MediaType.TEXT_EVENT_STREAM_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            AsyncContext async = request.startAsync(request, response);
+            async.setTimeout(timeoutMillis);
+            subscriber = new Subscriber(tourId, async, response.getOutputStream());
+            async.addListener(subscriber);
+        } catch (IOException | RuntimeException ex) {
+            subscriberCount.decrementAndGet();
+            throw ex;
+        }
+        subscribers.compute(tourId, (id, tour) -> {
+            Set<Subscriber> updated = tour == null ? ConcurrentHashMap.newKeySet() : tour;
+            updated.add(subscriber);
+            return updated;
+        });
+        subscriber.offerAggregate(new Frame("aggregate", json(aggregate(tourId))));
+        subscriber.start();
+    }
+
+    /**
+     * Fan a rating change out to the subscribers of its tour, after the aggregate has been updated.
+     */
+    @Order(1)
+    @EventListener
+    public void onRatingChanged(TourRatingChangedEvent event) {
+        Set<Subscriber> tour = subscribers.get(event.getTourId());
+        if (tour == null || tour.isEmpty()) return;
+        Frame rating = new Frame("rating", json(event));
+        Frame aggregate = new Frame("aggregate", json(aggregate(event.getTourId())));
+        for (Subscriber subscriber : tour) {
+            subscriber.offer(rating);
+            subscriber.offerAggregate(aggregate);
+        }
+    }
+
+    /**
+     * @return number of open subscriptions
+     */
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    /**
+     * @return number of subscribers disconnected for falling behind
+     */
+    public long getDisconnected() {
+        return disconnected.get();
+    }
+
+    @PreDestroy
+    public void stop() {
+        heartbeat.shutdownNow();
+        subscribers.values().forEach(tour -> tour.forEach(Subscriber::disconnect));
+        senders.shutdown();
+    }
+
+    private RatingAggregate aggregate(int tourId) {
+        return ratingAggregateService.get(tourId).orElse(RatingAggregate.EMPTY);
+    }
+
+    private String json(Object payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * An event encoded as written to the stream, once for all subscribers.
+     */
+    private static class Frame {
+        private final byte[] bytes;
+
+        Frame(String name, String data) {
+            this("event:" + name + "\ndata:" + data + "\n\n");
+        }
+
+        Frame(String text) {
+            this.bytes = text.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private class Subscriber implements WriteListener, AsyncListener {
+        private final int tourId;
+        private final AsyncContext async;
+        private final ServletOutputStream out;
+        private final BlockingQueue<Frame> queue = new LinkedBlockingQueue<>(bufferSize);
+        private final AtomicReference<Frame> aggregate = new AtomicReference<>();
+        // held by the one thread writing, until start and for good once the subscriber is completed
+        private final AtomicBoolean draining = new AtomicBoolean(true);
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // counts the container's writable callbacks, so one arriving while a sender gives up is not lost
+        private final AtomicLong writable = new AtomicLong();
+        // System.nanoTime() since which the connection could not take more, 0 while it can
+        private volatile long stalledSince;
+
+        Subscriber(int tourId, AsyncContext async, ServletOutputStream out) {
+            this.tourId = tourId;
+            this.async = async;
+            this.out = out;
+        }
+
+        /*
+         * Switches the response to non-blocking writes and lets the senders write to it
+         */
+        void start() {
+            try {
+                out.setWriteListener(this);
+            } catch (IllegalStateException ex) {
+                close(); // the request ended already
+            }
+            release(false, 0);
+        }
+
+        /*
+         * Never blocks: queues the frame and makes sure a sender drains the queue
+         */
+        void offer(Frame frame) {
+            if (closed.get()) return;
+            long stalled = stalledSince;
+            if (!queue.offer(frame) || (stalled != 0 && System.nanoTime() - stalled > sendTimeoutNanos)) {
+                disconnected.incrementAndGet();
+                log.debug("Disconnecting a slow subscriber of tour {}", tourId);
+                disconnect();
+                return;
+            }
+            scheduleDrain();
+        }
+
+        /*
+         * Replaces an aggregate that has not been sent yet, it is out of date
+         */
+        void offerAggregate(Frame frame) {
+            if (closed.get()) return;
+            aggregate.set(frame);
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::drain);
+                } catch (RejectedExecutionException ex) {
+                    draining.set(false); // shutting down
+                }
+            }
+        }
+
+        /*
+         * Writes until the queue is empty or the connection cannot take more without blocking; in the
+         * latter case the container calls onWritePossible once it can.
+         */
+        private void drain() {
+            long callbacks = writable.get();
+            boolean stalled = false;
+            try {
+                while (!closed.get()) {
+                    if (!out.isReady()) {
+                        stalled = true;
+                        if (stalledSince == 0) stalledSince = System.nanoTime();
+                        break;
+                    }
+                    Frame frame = queue.poll();
+                    if (frame == null) frame = aggregate.getAndSet(null);
+                    if (frame == null) break;
+                    out.write(frame.bytes);
+                    if (out.isReady()) out.flush();
+                }
+            } catch (IOException | IllegalStateException ex) {
+                // the client went away or the request completed meanwhile
+                close();
+            }
+            release(stalled, callbacks);
+        }
+
+        /*
+         * Lets another sender write, after completing the response if the subscription is closed
+         */
+        private void release(boolean stalled, long callbacks) {
+            if (closed.get()) {
+                complete();
+                return;
+            }
+            draining.set(false);
+            if (closed.get()) {
+                if (draining.compareAndSet(false, true)) complete();
+            } else if (stalled ? writable.get() != callbacks : !queue.isEmpty() || aggregate.get() != null) {
+                scheduleDrain();
+            }
+        }
+
+        @Override
+        public void onWritePossible() {
+            stalledSince = 0;
+            writable.incrementAndGet();
+            scheduleDrain();
+        }
+
+        @Override
+        public void onError(Throwable ex) {
+            disconnect();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            disconnect();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            disconnect();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+
+        /*
+         * Closes the subscription and ends the response, unless a sender is writing: that one ends it
+         * when it sees the subscription closed
+         */
+        void disconnect() {
+            close();
+            if (draining.compareAndSet(false, true)) complete();
+        }
+
+        private void complete() {
+            try {
+                async.complete();
+            } catch (IllegalStateException ex) {
+                // completed already, e.g. by the container after an error
+            }
+        }
+
+        void close() {
+            if (!closed.compareAndSet(false, true)) return;
+            subscriberCount.decrementAndGet();
+            queue.clear();
+            subscribers.computeIfPresent(tourId, (id, tour) -> {
+                tour.remove(this);
+                return tour.isEmpty() ? null : tour;
+            });
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.repository.RatingSummary;
+
+/**
+ * A rating as written by an update, with the score it had before.
+ */
+public class RatingUpdate implements RatingSummary {
+    private final Integer customerId;
+    private final Integer oldScore;
+    private final Integer score;
+    private final String comment;
+    private final Integer version;
+
+    RatingUpdate(Integer customerId, Integer oldScore, Integer score, String comment, Integer version) {
+        this.customerId = customerId;
+        this.oldScore = oldScore;
+        this.score = score;
+        this.comment = comment;
+        this.version = version;
+    }
+
+    @Override
+    public Integer getCustomerId() {
+        return customerId;
+    }
+
+    public Integer getOldScore() {
+        return oldScore;
+    }
+
+    @Override
+    public Integer getScore() {
+        return score;
+    }
+
+    @Override
+    public String getComment() {
+        return comment;
+    }
+
+    @Override
+    public Integer getVersion() {
+        return version;
+    }
+}
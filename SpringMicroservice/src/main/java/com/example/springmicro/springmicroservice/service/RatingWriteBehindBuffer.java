@@ -0,0 +1,390 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.TourRating;
+import com.example.springmicro.springmicroservice.domain.TourRatingChangedEvent;
+import com.example.springmicro.springmicroservice.domain.TourRatingsWrittenEvent;
+import com.example.springmicro.springmicroservice.repository.ShardedTourRatingRepository;
+import com.example.springmicro.springmicroservice.repository.TourRatingBatchRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind buffer for TourRating creates and updates.
+ *
+ * Accepted ratings are held in a bounded map keyed by tour and customer, so repeated writes of the
+ * same rating coalesce into one row. A background thread flushes the map with JDBC batch upserts
+ * once it holds flush-size ratings or flush-interval has passed. When the buffer is full, writers
+ * wait up to offer-timeout for a flush and are then rejected. Pending ratings are flushed on shutdown.
+ * With sharded ratings every flush writes one batch per shard. Every flush publishes a
+ * TourRatingsWrittenEvent, since the rating listings read from the database change only then.
+ *
+ * A rating that cannot be written stays buffered and is retried with a backoff that doubles from
+ * retry-backoff up to max-attempts writes, unless a newer write of it replaces it first. A rating
+ * that still fails is dropped: the ratings.write-behind.dropped counter is incremented and a
+ * TourRatingChangedEvent from the dropped score back to the stored one (a deletion when none is
+ * stored) is published, since its acknowledged change was already counted.
+ *
+ * Disabled unless springmicroservice.ratings.write-behind.enabled is true.
+ */
+@Service
+public class RatingWriteBehindBuffer {
+    private static final Logger log = LoggerFactory.getLogger(RatingWriteBehindBuffer.class);
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition flushDue = lock.newCondition();
+    // held while a snapshot is written, so deletes never interleave with a flush
+    private final Lock flushLock = new ReentrantLock();
+
+    private Map<Long, TourRating> pending = new LinkedHashMap<>();
+    // ratings whose write failed, waiting for their next attempt; guarded by lock
+    private final Map<Long, Retry> retrying = new LinkedHashMap<>();
+    private volatile Map<Long, TourRating> inFlight = Map.of();
+    private boolean running;
+    private Thread flusher;
+
+    private TourRatingBatchRepository tourRatingBatchRepository;
+    private ShardedTourRatingRepository shardedTourRatingRepository;
+    private ApplicationEventPublisher eventPublisher;
+    private Counter retried;
+    private Counter dropped;
+    private boolean enabled;
+    private int capacity;
+    private int flushSize;
+    private long flushIntervalMillis;
+    private long offerTimeoutMillis;
+    private long retryBackoffMillis;
+    private int maxAttempts;
+
+    @Autowired
+    public RatingWriteBehindBuffer(TourRatingBatchRepository tourRatingBatchRepository,
+                                   ShardedTourRatingRepository shardedTourRatingRepository,
+                                   ApplicationEventPublisher eventPublisher,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${springmicroservice.ratings.write-behind.enabled:false}") boolean enabled,
+                                   @Value("${springmicroservice.ratings.write-behind.capacity:10000}") int capacity,
+                                   @Value("${springmicroservice.ratings.write-behind.flush-size:500}") int flushSize,
+                                   @Value("${springmicroservice.ratings.write-behind.flush-interval-ms:200}") long flushIntervalMillis,
+                                   @Value("${springmicroservice.ratings.write-behind.offer-timeout-ms:1000}") long offerTimeoutMillis,
+                                   @Value("${springmicroservice.ratings.write-behind.retry-backoff-ms:1000}") long retryBackoffMillis,
+                                   @Value("${springmicroservice.ratings.write-behind.max-attempts:5}") int maxAttempts) {
+        this.tourRatingBatchRepository = tourRatingBatchRepository;
+        this.shardedTourRatingRepository = shardedTourRatingRepository;
+        this.eventPublisher = eventPublisher;
+        this.retried = meterRegistry.counter("ratings.write-behind.retried");
+        this.dropped = meterRegistry.counter("ratings.write-behind.dropped");
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.flushSize = flushSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.maxAttempts = maxAttempts;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        running = true;
+        flusher = new Thread(this::flushLoop, "rating-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Flush everything still pending before the database goes away; ratings waiting for a retry get
+     * one last attempt and are dropped if it fails.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!enabled) return;
+        lock.lock();
+        try {
+            running = false;
+            flushDue.signal();
+        } finally {
+            lock.unlock();
+        }
+        flusher.join(TimeUnit.SECONDS.toMillis(30));
+        flush(true);
+        log.info("Rating write-behind buffer stopped");
+    }
+
+    /**
+     * Buffer a rating, replacing any pending or failed write of the same tour and customer.
+     *
+     * @throws IllegalArgumentException   if the rating has no score, which the database would reject
+     *                                    after the write has been acknowledged
+     * @throws RejectedExecutionException if the buffer stays full for offer-timeout
+     */
+    public void put(TourRating rating) {
+        if (rating.getScore() == null) {
+            throw new IllegalArgumentException("score is required");
+        }
+        long key = key(rating.getPk().getTour().getId(), rating.getPk().getCustomerId());
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(offerTimeoutMillis);
+            while (pending.size() + retrying.size() >= capacity && !pending.containsKey(key)
+                    && !retrying.containsKey(key)) {
+                if (remaining <= 0) {
+                    throw new RejectedExecutionException("Rating write buffer is full, try again later");
+                }
+                flushDue.signal();
+                remaining = notFull.awaitNanos(remaining);
+            }
+            retrying.remove(key);
+            pending.put(key, rating);
+            if (pending.size() >= flushSize) {
+                flushDue.signal();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted waiting for the rating write buffer", ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the buffered rating of a customer for a tour, if it has not been written yet
+     */
+    public Optional<TourRating> get(int tourId, int customerId) {
+        long key = key(tourId, customerId);
+        lock.lock();
+        try {
+            TourRating rating = pending.get(key);
+            if (rating != null) return Optional.of(rating);
+            Retry retry = retrying.get(key);
+            if (retry != null) return Optional.of(retry.rating);
+        } finally {
+            lock.unlock();
+        }
+        return Optional.ofNullable(inFlight.get(key));
+    }
+
+    /**
+     * Drop the buffered rating of a customer for a tour and run a database action (e.g. a delete)
+     * while no flush can write it back.
+     *
+     * @return the rating that was buffered, if any
+     */
+    public Optional<TourRating> remove(int tourId, int customerId, Runnable whileNotFlushing) {
+        flushLock.lock();
+        try {
+            TourRating removed;
+            lock.lock();
+            try {
+                long key = key(tourId, customerId);
+                removed = pending.remove(key);
+                Retry retry = retrying.remove(key);
+                if (removed == null && retry != null) removed = retry.rating;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            whileNotFlushing.run();
+            return Optional.ofNullable(removed);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Write every pending rating now, with the failed ones whose retry is due.
+     */
+    public void flush() {
+        flush(false);
+    }
+
+    private void flush(boolean lastAttempt) {
+        flushLock.lock();
+        try {
+            Map<Long, Integer> attempts = new LinkedHashMap<>();
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                for (Iterator<Map.Entry<Long, Retry>> due = retrying.entrySet().iterator(); due.hasNext(); ) {
+                    Map.Entry<Long, Retry> retry = due.next();
+                    if (lastAttempt || retry.getValue().dueNanos - now <= 0) {
+                        pending.put(retry.getKey(), retry.getValue().rating);
+                        attempts.put(retry.getKey(), retry.getValue().attempts);
+                        due.remove();
+                    }
+                }
+                if (pending.isEmpty()) return;
+                inFlight = pending;
+                pending = new LinkedHashMap<>();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            List<TourRating> ratings = List.copyOf(inFlight.values());
+            try {
+                List<TourRating> failed = write(ratings);
+                if (!failed.isEmpty()) {
+                    keepForRetry(failed, attempts, lastAttempt);
+                }
+            } finally {
+                inFlight = Map.of();
+                eventPublisher.publishEvent(new TourRatingsWrittenEvent(ratings.stream()
+                        .map(rating -> rating.getPk().getTour().getId()).collect(Collectors.toSet())));
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            lock.lock();
+            try {
+                if (!running) return;
+                if (pending.size() < flushSize) {
+                    flushDue.await(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException ex) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                flush();
+            } catch (RuntimeException ex) {
+                log.error("Rating write-behind flush failed", ex);
+            }
+        }
+    }
+
+    /*
+     * Upsert a snapshot in batches; if the batch fails, retry row by row so one bad rating
+     * (e.g. of a tour deleted meanwhile) does not hold back the others
+     * @return the ratings that could not be written
+     */
+    private List<TourRating> write(List<TourRating> ratings) {
+        try {
+            upsertAll(ratings);
+            return List.of();
+        } catch (RuntimeException batchFailure) {
+            if (ratings.size() == 1) {
+                log.warn("Write of buffered rating of customer {} for tour {} failed: {}",
+                        ratings.get(0).getPk().getCustomerId(), ratings.get(0).getPk().getTour().getId(),
+                        batchFailure.getMessage());
+                return ratings;
+            }
+            log.warn("Batch write of {} buffered ratings failed, retrying one at a time: {}",
+                    ratings.size(), batchFailure.getMessage());
+            List<TourRating> failed = new ArrayList<>();
+            for (TourRating rating : ratings) {
+                try {
+                    upsertAll(List.of(rating));
+                } catch (RuntimeException ex) {
+                    log.warn("Write of buffered rating of customer {} for tour {} failed: {}",
+                            rating.getPk().getCustomerId(), rating.getPk().getTour().getId(), ex.getMessage());
+                    failed.add(rating);
+                }
+            }
+            return failed;
+        }
+    }
+
+    /*
+     * Put failed ratings back for a later attempt, unless a newer write replaced them meanwhile;
+     * drop those out of attempts
+     */
+    private void keepForRetry(List<TourRating> failed, Map<Long, Integer> attempts, boolean lastAttempt) {
+        List<TourRating> toDrop = new ArrayList<>();
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            for (TourRating rating : failed) {
+                long key = key(rating.getPk().getTour().getId(), rating.getPk().getCustomerId());
+                if (pending.containsKey(key)) continue;
+                int attempt = attempts.getOrDefault(key, 0) + 1;
+                if (lastAttempt || attempt >= maxAttempts) {
+                    toDrop.add(rating);
+                } else {
+                    long backoff = TimeUnit.MILLISECONDS.toNanos(retryBackoffMillis) << (attempt - 1);
+                    retrying.put(key, new Retry(rating, attempt, now + backoff));
+                    retried.increment();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        toDrop.forEach(this::drop);
+    }
+
+    /*
+     * The change of a dropped rating was already published; publish the change back to what is stored
+     */
+    private void drop(TourRating rating) {
+        int tourId = rating.getPk().getTour().getId();
+        int customerId = rating.getPk().getCustomerId();
+        dropped.increment();
+        log.error("Dropping buffered rating of customer {} for tour {} after failed writes", customerId, tourId);
+        try {
+            Optional<Integer> stored = shardedTourRatingRepository.isEnabled()
+                    ? shardedTourRatingRepository.findSummary(tourId, customerId).map(summary -> summary.getScore())
+                    : tourRatingBatchRepository.findScore(tourId, customerId);
+            if (stored.isEmpty()) {
+                eventPublisher.publishEvent(TourRatingChangedEvent.deleted(tourId, customerId, rating.getScore()));
+            } else if (!stored.get().equals(rating.getScore())) {
+                eventPublisher.publishEvent(TourRatingChangedEvent.updated(tourId, customerId, rating.getScore(),
+                        stored.get()));
+            }
+        } catch (RuntimeException ex) {
+            log.error("Cannot publish the change back from the dropped rating of customer {} for tour {}",
+                    customerId, tourId, ex);
+        }
+    }
+
+    private void upsertAll(List<TourRating> ratings) {
+        if (shardedTourRatingRepository.isEnabled()) {
+            shardedTourRatingRepository.upsertAll(ratings);
+        } else {
+            tourRatingBatchRepository.upsertAll(ratings);
+        }
+    }
+
+    private static long key(int tourId, int customerId) {
+        return ((long) tourId << 32) | (customerId & 0xffffffffL);
+    }
+
+    private static class Retry {
+        final TourRating rating;
+        final int attempts;
+        final long dueNanos;
+
+        Retry(TourRating rating, int attempts, long dueNanos) {
+            this.rating = rating;
+            this.attempts = attempts;
+            this.dueNanos = dueNanos;
+        }
+    }
+}
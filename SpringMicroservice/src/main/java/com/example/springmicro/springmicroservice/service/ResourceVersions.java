@@ -0,0 +1,83 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.TourChangedEvent;
+import com.example.springmicro.springmicroservice.domain.TourPackageChangedEvent;
+import com.example.springmicro.springmicroservice.domain.TourRatingChangedEvent;
+import com.example.springmicro.springmicroservice.domain.TourRatingsWrittenEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory version counters for the tour catalog, the tour packages and the ratings of each tour.
+ *
+ * Every change event bumps the matching counter, so a version (prefixed with the start time of this
+ * instance) identifies the current state of a resource without reading it.
+ */
+@Service
+public class ResourceVersions {
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong tours = new AtomicLong();
+    private final AtomicLong packages = new AtomicLong();
+    private final AtomicLong allRatings = new AtomicLong();
+    private final ConcurrentMap<Integer, AtomicLong> ratings = new ConcurrentHashMap<>();
+
+    /**
+     * @return version of every Tour resource; tours embed their package so packages count too
+     */
+    public String tours() {
+        return epoch + "-t" + tours.get() + "." + packages.get();
+    }
+
+    /**
+     * @return version of every TourPackage resource
+     */
+    public String packages() {
+        return epoch + "-p" + packages.get();
+    }
+
+    /**
+     * @param tourId tour identifier
+     * @return version of the ratings of a tour
+     */
+    public String ratings(int tourId) {
+        AtomicLong version = ratings.get(tourId);
+        return epoch + "-r" + tourId + "." + (version == null ? 0 : version.get()) + "." + tours.get();
+    }
+
+    /**
+     * @return version of the resources derived from the ratings of every tour, e.g. the leaderboard
+     */
+    public String ratings() {
+        return epoch + "-a" + allRatings.get() + "." + tours.get();
+    }
+
+    @EventListener
+    public void onToursChanged(TourChangedEvent event) {
+        tours.incrementAndGet();
+    }
+
+    @EventListener
+    public void onTourPackageChanged(TourPackageChangedEvent event) {
+        packages.incrementAndGet();
+    }
+
+    @EventListener
+    public void onRatingChanged(TourRatingChangedEvent event) {
+        ratings.computeIfAbsent(event.getTourId(), tourId -> new AtomicLong()).incrementAndGet();
+        allRatings.incrementAndGet();
+    }
+
+    /*
+     * Buffered ratings reach the listings only when written: a listing read in between may have been
+     * cached under the version of the change
+     */
+    @EventListener
+    public void onRatingsWritten(TourRatingsWrittenEvent event) {
+        event.getTourIds().forEach(tourId ->
+                ratings.computeIfAbsent(tourId, id -> new AtomicLong()).incrementAndGet());
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.Difficulty;
+import com.example.springmicro.springmicroservice.domain.ImportRecord;
+import com.example.springmicro.springmicroservice.domain.Region;
+import com.example.springmicro.springmicroservice.domain.Tour;
+import com.example.springmicro.springmicroservice.domain.TourChangedEvent;
+import com.example.springmicro.springmicroservice.domain.TourPackage;
+import com.example.springmicro.springmicroservice.repository.ImportRecordRepository;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Streams a tour catalog (a JSON array of tours) into the database.
+ *
+ * The file is read token by token so only one batch of tours is held in memory at a time.
+ * Each batch resolves its tour packages from the TourPackageRegistry and is upserted by TourCatalogWriter,
+ * so re-importing a catalog only writes the tours that changed. The SHA-256 of every imported file
+ * is recorded and a file whose content did not change since its last import is not read again.
+ * Tours that disappeared from a catalog are kept, since ratings may refer to them.
+ *
+ * Imports are recorded in the tours.import.files (by outcome), tours.import.tours (by result)
+ * and tours.import.duration meters.
+ */
+@Service
+public class TourCatalogImporter {
+    private static final Logger log = LoggerFactory.getLogger(TourCatalogImporter.class);
+
+    static final ObjectMapper MAPPER = new ObjectMapper()
+            .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+
+    private TourCatalogWriter tourCatalogWriter;
+    private TourPackageRegistry tourPackageRegistry;
+    private ImportRecordRepository importRecordRepository;
+    private ApplicationEventPublisher eventPublisher;
+    private MeterRegistry meterRegistry;
+    private int batchSize;
+    private long progressInterval;
+
+    @Autowired
+    public TourCatalogImporter(TourCatalogWriter tourCatalogWriter, TourPackageRegistry tourPackageRegistry,
+                               ImportRecordRepository importRecordRepository, ApplicationEventPublisher eventPublisher,
+                               MeterRegistry meterRegistry,
+                               @Value("${springmicroservice.import.batch-size:500}") int batchSize,
+                               @Value("${springmicroservice.import.progress-interval:10000}") long progressInterval) {
+        this.tourCatalogWriter = tourCatalogWriter;
+        this.tourPackageRegistry = tourPackageRegistry;
+        this.importRecordRepository = importRecordRepository;
+        this.eventPublisher = eventPublisher;
+        this.meterRegistry = meterRegistry;
+        this.batchSize = batchSize;
+        this.progressInterval = progressInterval;
+    }
+
+    /**
+     * Import a catalog file, unless its content is the same as at its last import.
+     * One file is imported at a time.
+     *
+     * @param fileToImport path of the JSON catalog
+     * @return the import report
+     */
+    public synchronized TourImportReport importFile(String fileToImport) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "failed";
+        try {
+            TourImportReport report = importFileIfChanged(fileToImport);
+            outcome = report.isSkipped() ? "skipped" : "imported";
+            meterRegistry.counter("tours.import.tours", "result", "created").increment(report.getCreated());
+            meterRegistry.counter("tours.import.tours", "result", "updated").increment(report.getUpdated());
+            meterRegistry.counter("tours.import.tours", "result", "unchanged").increment(report.getUnchanged());
+            meterRegistry.counter("tours.import.tours", "result", "rejected").increment(report.getRejected());
+            return report;
+        } finally {
+            meterRegistry.counter("tours.import.files", "outcome", outcome).increment();
+            sample.stop(meterRegistry.timer("tours.import.duration", "outcome", outcome));
+        }
+    }
+
+    private TourImportReport importFileIfChanged(String fileToImport) throws IOException {
+        long start = System.nanoTime();
+        String checksum = checksum(fileToImport);
+        Optional<ImportRecord> lastImport = importRecordRepository.findById(fileToImport);
+        if (lastImport.isPresent() && lastImport.get().getChecksum().equals(checksum)) {
+            TourImportReport report = TourImportReport.skipped(fileToImport, (System.nanoTime() - start) / 1_000_000);
+            log.info("Skipping import of {}: unchanged since {}", fileToImport, lastImport.get().getImportedAt());
+            return report;
+        }
+        MessageDigest digest = sha256();
+        TourImportReport report;
+        try (InputStream in = new DigestInputStream(new BufferedInputStream(new FileInputStream(fileToImport)), digest)) {
+            report = importStream(fileToImport, in);
+        }
+        // record what was actually read, in case the file changed since it was hashed
+        importRecordRepository.save(new ImportRecord(fileToImport, hex(digest.digest()), Instant.now()));
+        return report;
+    }
+
+    /**
+     * Import every tour of a JSON catalog stream.
+     *
+     * @param source name of the catalog, used in the report
+     * @param in     stream holding a JSON array of tours
+     * @return the import report
+     */
+    public TourImportReport importStream(String source, InputStream in) throws IOException {
+        long start = System.nanoTime();
+        long[] counts = new long[4]; // created, updated, unchanged, rejected
+        long nextProgress = progressInterval;
+        List<TourFromFile> batch = new ArrayList<>(batchSize);
+        try (JsonParser parser = MAPPER.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Tour catalog " + source + " is not a JSON array");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                batch.add(MAPPER.readValue(parser, TourFromFile.class));
+                if (batch.size() == batchSize) {
+                    writeBatch(batch, counts);
+                    batch.clear();
+                    long read = counts[0] + counts[1] + counts[2] + counts[3];
+                    if (read >= nextProgress) {
+                        log.info("Read {} tours from {} so far", read, source);
+                        nextProgress += progressInterval;
+                    }
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batch, counts);
+        }
+        TourImportReport report = new TourImportReport(source, counts[0], counts[1], counts[2], counts[3],
+                (System.nanoTime() - start) / 1_000_000);
+        log.info("Finished import: {}", report);
+        return report;
+    }
+
+    /*
+     * Resolve the packages of a batch and upsert the batch.
+     * Adds the created, updated, unchanged and rejected tours to counts; tours with an unknown
+     * package or bad enum value are rejected
+     */
+    private void writeBatch(List<TourFromFile> batch, long[] counts) {
+        List<Tour> tours = new ArrayList<>(batch.size());
+        for (TourFromFile importedTour : batch) {
+            TourPackage tourPackage = tourPackageRegistry.findByName(importedTour.getPackageType()).orElse(null);
+            if (tourPackage == null) {
+                log.warn("Skipping tour '{}': Tour Package {} does not exist",
+                        importedTour.getTitle(), importedTour.getPackageType());
+                continue;
+            }
+            try {
+                tours.add(importedTour.toTour(tourPackage));
+            } catch (RuntimeException ex) {
+                log.warn("Skipping tour '{}': {}", importedTour.getTitle(), ex.getMessage());
+            }
+        }
+        TourCatalogWriter.Result result = tourCatalogWriter.upsert(tours);
+        counts[0] += result.getCreated().size();
+        counts[1] += result.getUpdated().size();
+        counts[2] += result.getUnchanged();
+        counts[3] += batch.size() - tours.size();
+        List<Tour> changed = new ArrayList<>(result.getCreated());
+        changed.addAll(result.getUpdated());
+        if (!changed.isEmpty()) {
+            eventPublisher.publishEvent(new TourChangedEvent(changed));
+        }
+    }
+
+    private static String checksum(String file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /*
+     * Helper class to access the data of JSON file
+     * */
+    static class TourFromFile {
+        private String packageType, title, description, blurb, price, length,
+                bullets, keywords, difficulty, region;
+
+        protected TourFromFile(){}
+
+        String getPackageType() { return packageType; }
+
+        String getTitle() { return title; }
+
+        Tour toTour(TourPackage tourPackage) {
+            return new Tour(title, description, blurb, Integer.parseInt(price), length, bullets, keywords,
+                    tourPackage, Difficulty.valueOf(difficulty), Region.findByLabel(region));
+        }
+    }
+}
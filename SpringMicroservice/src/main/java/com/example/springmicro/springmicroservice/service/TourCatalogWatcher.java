@@ -0,0 +1,120 @@
+package com.example.springmicro.springmicroservice.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports the tour catalogs (*.json) dropped into or changed in a watched directory, while the
+ * application keeps serving requests.
+ *
+ * A file is imported once its size and modification time stop changing for the settle time, so a
+ * file that is still being copied is not read half-written. The importer only writes the tours that
+ * changed and skips files whose content was already imported, so repeated events are cheap.
+ *
+ * Disabled unless springmicroservice.import.watch-dir is set.
+ */
+@Service
+public class TourCatalogWatcher {
+    private static final Logger log = LoggerFactory.getLogger(TourCatalogWatcher.class);
+
+    private TourCatalogImporter tourCatalogImporter;
+    private String watchDir;
+    private long settleMillis;
+    private WatchService watchService;
+
+    @Autowired
+    public TourCatalogWatcher(TourCatalogImporter tourCatalogImporter,
+                              @Value("${springmicroservice.import.watch-dir:}") String watchDir,
+                              @Value("${springmicroservice.import.settle-ms:500}") long settleMillis) {
+        this.tourCatalogImporter = tourCatalogImporter;
+        this.watchDir = watchDir;
+        this.settleMillis = settleMillis;
+    }
+
+    /**
+     * Import the catalogs already in the directory, then watch it.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() throws IOException {
+        if (watchDir.isEmpty()) return;
+        Path dir = Paths.get(watchDir);
+        Files.createDirectories(dir);
+        watchService = dir.getFileSystem().newWatchService();
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread watcher = new Thread(() -> watch(dir), "tour-catalog-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        log.info("Watching {} for tour catalogs", dir.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (watchService != null) watchService.close();
+    }
+
+    private void watch(Path dir) {
+        Set<Path> due = new LinkedHashSet<>();
+        try (DirectoryStream<Path> existing = Files.newDirectoryStream(dir, "*.json")) {
+            existing.forEach(due::add);
+        } catch (IOException ex) {
+            log.error("Cannot list {}", dir, ex);
+        }
+        try {
+            while (true) {
+                // collect events until the directory has been quiet for the settle time
+                WatchKey key = due.isEmpty() ? watchService.take()
+                        : watchService.poll(settleMillis, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    due.removeIf(this::importIfSettled);
+                    continue;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) continue;
+                    Path file = dir.resolve((Path) event.context());
+                    if (file.getFileName().toString().endsWith(".json")) due.add(file);
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            log.info("Stopped watching {}", dir);
+        }
+    }
+
+    /*
+     * @return true when the file is done with: imported, failed or gone; false if it is still changing
+     */
+    private boolean importIfSettled(Path file) {
+        try {
+            if (!Files.isRegularFile(file)) return true;
+            long size = Files.size(file), modified = Files.getLastModifiedTime(file).toMillis();
+            if (System.currentTimeMillis() - modified < settleMillis) return false;
+            tourCatalogImporter.importFile(file.toString());
+            if (Files.size(file) != size || Files.getLastModifiedTime(file).toMillis() != modified) {
+                return false; // changed while it was imported, import it again
+            }
+        } catch (IOException | RuntimeException ex) {
+            log.error("Import of {} failed", file, ex);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.Tour;
+import com.example.springmicro.springmicroservice.repository.TourRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Writes one batch of catalog tours, matching them to stored Tours by their natural key,
+ * title plus tour package code.
+ *
+ * The stored Tours of a batch are read with one IN query on the title; new tours are inserted,
+ * changed ones are updated in place and unchanged ones are not written at all.
+ */
+@Service
+public class TourCatalogWriter {
+    private TourRepository tourRepository;
+
+    @Autowired
+    public TourCatalogWriter(TourRepository tourRepository) {
+        this.tourRepository = tourRepository;
+    }
+
+    /**
+     * Upsert a batch of tours in one transaction.
+     *
+     * @param incoming tours read from a catalog; a later tour with the same natural key replaces an earlier one
+     * @return what was written
+     */
+    @Transactional
+    public Result upsert(List<Tour> incoming) {
+        Map<String, Tour> byKey = new LinkedHashMap<>();
+        incoming.forEach(tour -> byKey.put(naturalKey(tour), tour));
+        Set<String> titles = incoming.stream().map(Tour::getTitle).collect(Collectors.toSet());
+        Map<String, Tour> stored = new HashMap<>();
+        tourRepository.findWithTextByTitleIn(titles).forEach(tour -> stored.put(naturalKey(tour), tour));
+
+        List<Tour> created = new ArrayList<>();
+        List<Tour> updated = new ArrayList<>();
+        byKey.forEach((key, tour) -> {
+            Tour existing = stored.get(key);
+            if (existing == null) {
+                created.add(tour);
+            } else if (existing.copyContent(tour)) {
+                updated.add(existing);
+            }
+        });
+        tourRepository.saveAll(created);
+        return new Result(created, updated, incoming.size() - created.size() - updated.size());
+    }
+
+    private static String naturalKey(Tour tour) {
+        return tour.getTitle() + '\u0000' + (tour.getTourPackage() == null ? "" : tour.getTourPackage().getCode());
+    }
+
+    /**
+     * Tours created and updated by a batch, and how many were left as they were.
+     */
+    public static class Result {
+        private final List<Tour> created;
+        private final List<Tour> updated;
+        private final int unchanged;
+
+        Result(List<Tour> created, List<Tour> updated, int unchanged) {
+            this.created = created;
+            this.updated = updated;
+            this.unchanged = unchanged;
+        }
+
+        public List<Tour> getCreated() {
+            return created;
+        }
+
+        public List<Tour> getUpdated() {
+            return updated;
+        }
+
+        public int getUnchanged() {
+            return unchanged;
+        }
+    }
+}
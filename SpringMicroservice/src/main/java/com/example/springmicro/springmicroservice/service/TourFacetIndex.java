@@ -0,0 +1,230 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.Difficulty;
+import com.example.springmicro.springmicroservice.domain.Region;
+import com.example.springmicro.springmicroservice.domain.Tour;
+import com.example.springmicro.springmicroservice.domain.TourChangedEvent;
+import com.example.springmicro.springmicroservice.repository.TourRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bitset facet index over Region, Difficulty, TourPackage code and price band.
+ *
+ * Every facet value owns a BitSet of the tour ids that have it. Values selected within one facet
+ * are OR-ed, facets are AND-ed, and the count of each facet value is its BitSet AND-ed with the
+ * filters of all other facets, so one call answers both the matches and the counts.
+ * The index is built at startup and kept current from TourChangedEvents. A rebuild reads the tours
+ * into a new index and swaps it in; the tours changed while it reads are replayed onto the new index
+ * first, so a change the pages read before it was committed is not lost.
+ */
+@Service
+public class TourFacetIndex {
+    private static final Logger log = LoggerFactory.getLogger(TourFacetIndex.class);
+    private static final int REBUILD_PAGE_SIZE = 1000;
+
+    public enum Facet { REGION, DIFFICULTY, PACKAGE, PRICE }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final int[] priceBands;
+    private Index index;
+    // tours changed while a rebuild runs, null when none does; guarded by lock
+    private List<Tour> replay;
+
+    private TourRepository tourRepository;
+
+    /**
+     * @param priceBands ascending lower bounds of the price bands after the first, e.g. 500,1000,2000
+     *                   gives the bands 0-499, 500-999, 1000-1999 and 2000+
+     */
+    @Autowired
+    public TourFacetIndex(TourRepository tourRepository,
+                          @Value("${springmicroservice.facets.price-bands:500,1000,2000}") int[] priceBands) {
+        this.tourRepository = tourRepository;
+        this.priceBands = priceBands.clone();
+        Arrays.sort(this.priceBands);
+        this.index = new Index();
+    }
+
+    /**
+     * Filter the tours.
+     *
+     * @param selected facet -> accepted values; a facet that is absent or empty does not filter
+     * @param limit    maximum number of tours returned
+     * @return the matching tours in id order, the total and the counts of every facet value
+     */
+    public FacetResult filter(Map<Facet, ? extends Collection<String>> selected, int limit) {
+        lock.readLock().lock();
+        try {
+            Map<Facet, BitSet> filters = new EnumMap<>(Facet.class);
+            for (Facet facet : Facet.values()) {
+                Collection<String> values = selected.get(facet);
+                if (values == null || values.isEmpty()) continue;
+                BitSet union = new BitSet();
+                values.forEach(value -> {
+                    BitSet tours = index.values.get(facet).get(value);
+                    if (tours != null) union.or(tours);
+                });
+                filters.put(facet, union);
+            }
+
+            BitSet matches = andAll(filters, null);
+            List<TourSummary> tours = new ArrayList<>(Math.min(limit, matches.cardinality()));
+            for (int id = matches.nextSetBit(0); id >= 0 && tours.size() < limit; id = matches.nextSetBit(id + 1)) {
+                tours.add(index.tours.get(id));
+            }
+
+            Map<String, Map<String, Integer>> counts = new LinkedHashMap<>();
+            for (Facet facet : Facet.values()) {
+                BitSet others = andAll(filters, facet);
+                Map<String, Integer> facetCounts = new LinkedHashMap<>();
+                index.values.get(facet).forEach((value, valueTours) -> {
+                    BitSet count = (BitSet) valueTours.clone();
+                    count.and(others);
+                    facetCounts.put(value, count.cardinality());
+                });
+                counts.put(facet.name().toLowerCase(), facetCounts);
+            }
+            return new FacetResult(matches.cardinality(), tours, counts);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuild the index from every stored Tour, reading them in id order one page at a time.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        setReplay(new ArrayList<>());
+        Index rebuilt = new Index();
+        try {
+            List<Tour> page = tourRepository.findByIdGreaterThanOrderByIdAsc(Integer.MIN_VALUE,
+                    PageRequest.of(0, REBUILD_PAGE_SIZE));
+            while (!page.isEmpty()) {
+                page.forEach(rebuilt::put);
+                page = tourRepository.findByIdGreaterThanOrderByIdAsc(page.get(page.size() - 1).getId(),
+                        PageRequest.of(0, REBUILD_PAGE_SIZE));
+            }
+        } catch (RuntimeException ex) {
+            setReplay(null);
+            throw ex;
+        }
+        int replayed;
+        lock.writeLock().lock();
+        try {
+            replayed = replay.size();
+            replay.forEach(rebuilt::put);
+            replay = null;
+            index = rebuilt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Rebuilt tour facet index with {} tours, replaying {} changes", rebuilt.tours.size(), replayed);
+    }
+
+    private void setReplay(List<Tour> replay) {
+        lock.writeLock().lock();
+        try {
+            this.replay = replay;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventListener
+    public void onToursChanged(TourChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (replay != null) replay.addAll(event.getTours());
+            event.getTours().forEach(index::put);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * AND of all filters except the skipped facet, starting from every indexed tour
+     */
+    private BitSet andAll(Map<Facet, BitSet> filters, Facet skip) {
+        BitSet result = (BitSet) index.all.clone();
+        filters.forEach((facet, filter) -> {
+            if (facet != skip) result.and(filter);
+        });
+        return result;
+    }
+
+    /*
+     * Label of the price band a price falls in
+     */
+    String priceBand(Integer price) {
+        if (price == null) return "unknown";
+        int lower = 0;
+        for (int bound : priceBands) {
+            if (price < bound) return lower + "-" + (bound - 1);
+            lower = bound;
+        }
+        return lower + "+";
+    }
+
+    /*
+     * Facet values and summaries; guarded by the enclosing lock once published
+     */
+    private class Index {
+        final Map<Facet, Map<String, BitSet>> values = new EnumMap<>(Facet.class);
+        final Map<Integer, TourSummary> tours = new HashMap<>();
+        final BitSet all = new BitSet();
+
+        Index() {
+            for (Facet facet : Facet.values()) {
+                values.put(facet, new LinkedHashMap<>());
+            }
+            // every enum value and price band shows up in the counts, even with no tours
+            Arrays.stream(Region.values()).forEach(region -> values.get(Facet.REGION).put(region.name(), new BitSet()));
+            Arrays.stream(Difficulty.values()).forEach(difficulty ->
+                    values.get(Facet.DIFFICULTY).put(difficulty.name(), new BitSet()));
+            values.get(Facet.PRICE).put(priceBand(0), new BitSet());
+            Arrays.stream(priceBands).forEach(bound -> values.get(Facet.PRICE).put(priceBand(bound), new BitSet()));
+        }
+
+        void put(Tour tour) {
+            int id = tour.getId();
+            TourSummary previous = tours.remove(id);
+            if (previous != null) {
+                valuesOf(previous).forEach((facet, value) -> values.get(facet).get(value).clear(id));
+            }
+            TourSummary summary = new TourSummary(tour);
+            valuesOf(summary).forEach((facet, value) ->
+                    values.get(facet).computeIfAbsent(value, v -> new BitSet()).set(id));
+            tours.put(id, summary);
+            all.set(id);
+        }
+
+        Map<Facet, String> valuesOf(TourSummary tour) {
+            Map<Facet, String> facetValues = new EnumMap<>(Facet.class);
+            if (tour.getRegion() != null) facetValues.put(Facet.REGION, tour.getRegion().name());
+            if (tour.getDifficulty() != null) facetValues.put(Facet.DIFFICULTY, tour.getDifficulty().name());
+            if (tour.getTourPackageCode() != null) facetValues.put(Facet.PACKAGE, tour.getTourPackageCode());
+            facetValues.put(Facet.PRICE, priceBand(tour.getPrice()));
+            return facetValues;
+        }
+    }
+}
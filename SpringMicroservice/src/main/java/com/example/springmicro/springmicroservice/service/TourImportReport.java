@@ -0,0 +1,96 @@
+package com.example.springmicro.springmicroservice.service;
+
+/**
+ * Outcome of a tour catalog import: how many tours were created, updated, left unchanged
+ * or rejected, and how long it took. A skipped import found the catalog unchanged since
+ * its last import and read no tours.
+ */
+public class TourImportReport {
+    private final String source;
+    private final long created;
+    private final long updated;
+    private final long unchanged;
+    private final long rejected;
+    private final long elapsedMillis;
+    private final boolean skipped;
+
+    public TourImportReport(String source, long created, long updated, long unchanged, long rejected,
+                            long elapsedMillis) {
+        this(source, created, updated, unchanged, rejected, elapsedMillis, false);
+    }
+
+    private TourImportReport(String source, long created, long updated, long unchanged, long rejected,
+                             long elapsedMillis, boolean skipped) {
+        this.source = source;
+        this.created = created;
+        this.updated = updated;
+        this.unchanged = unchanged;
+        this.rejected = rejected;
+        this.elapsedMillis = elapsedMillis;
+        this.skipped = skipped;
+    }
+
+    /**
+     * @return the report of an import skipped because the catalog did not change
+     */
+    public static TourImportReport skipped(String source, long elapsedMillis) {
+        return new TourImportReport(source, 0, 0, 0, 0, elapsedMillis, true);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    public long getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * @return tours written, created or updated
+     */
+    public long getImported() {
+        return created + updated;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return tours read per second, 0 when nothing was read
+     */
+    public double getThroughput() {
+        long read = created + updated + unchanged + rejected;
+        return elapsedMillis == 0 ? read : read * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "TourImportReport{" +
+                "source='" + source + '\'' +
+                ", created=" + created +
+                ", updated=" + updated +
+                ", unchanged=" + unchanged +
+                ", rejected=" + rejected +
+                ", skipped=" + skipped +
+                ", elapsedMillis=" + elapsedMillis +
+                ", throughput=" + String.format("%.1f", getThroughput()) + "/s" +
+                '}';
+    }
+}
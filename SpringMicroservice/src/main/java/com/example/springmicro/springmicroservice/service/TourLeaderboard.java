@@ -0,0 +1,155 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.TourRatingChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Tours ranked by average rating, best first, with more ratings and then lower id breaking ties.
+ *
+ * The ranking is a skip list that is re-positioned from the RatingAggregate of a tour whenever one
+ * of its ratings changes, so reading the top N walks N entries and never reads the ratings.
+ *
+ * A rebuild ranks every tour on a new skip list and swaps it in, so readers keep the previous ranking
+ * meanwhile. The tours changed while it runs are re-positioned on the new ranking before the swap,
+ * under the same read/write lock scheme as the RatingAggregateService rebuild.
+ */
+@Service
+public class TourLeaderboard {
+    private static final Logger log = LoggerFactory.getLogger(TourLeaderboard.class);
+
+    private static final Comparator<TourRanking> BEST_FIRST = Comparator
+            .comparingDouble(TourRanking::getAverage).reversed()
+            .thenComparing(Comparator.comparingLong(TourRanking::getCount).reversed())
+            .thenComparingInt(TourRanking::getTourId);
+
+    private final ReadWriteLock swap = new ReentrantReadWriteLock();
+
+    private volatile Board board = new Board();
+    // tours changed while a rebuild runs, null when none does; guarded by swap
+    private Set<Integer> changed;
+
+    private RatingAggregateService ratingAggregateService;
+
+    @Autowired
+    public TourLeaderboard(RatingAggregateService ratingAggregateService) {
+        this.ratingAggregateService = ratingAggregateService;
+    }
+
+    /**
+     * @param limit maximum number of tours
+     * @return the best rated tours, best first; tours without ratings are not ranked
+     */
+    public List<TourRanking> top(int limit) {
+        Board board = this.board;
+        List<TourRanking> top = new ArrayList<>(Math.min(limit, board.current.size()));
+        // the skip list is updated with a remove and an add, so a reader can briefly see a tour twice
+        Set<Integer> seen = new HashSet<>();
+        for (TourRanking entry : board.ranking) {
+            if (top.size() == limit) break;
+            if (seen.add(entry.getTourId())) top.add(entry);
+        }
+        return top;
+    }
+
+    /**
+     * Rank every tour from the aggregates, which are rebuilt first.
+     */
+    @Order(1)
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        swap.writeLock().lock();
+        try {
+            changed = ConcurrentHashMap.newKeySet();
+        } finally {
+            swap.writeLock().unlock();
+        }
+        Board rebuilt = new Board();
+        try {
+            ratingAggregateService.forEach(rebuilt::update);
+        } catch (RuntimeException ex) {
+            stopRecording();
+            throw ex;
+        }
+        swap.writeLock().lock();
+        try {
+            changed.forEach(tourId -> update(rebuilt, tourId));
+            changed = null;
+            board = rebuilt;
+        } finally {
+            swap.writeLock().unlock();
+        }
+        log.info("Rebuilt tour leaderboard with {} tours", rebuilt.current.size());
+    }
+
+    private void stopRecording() {
+        swap.writeLock().lock();
+        try {
+            changed = null;
+        } finally {
+            swap.writeLock().unlock();
+        }
+    }
+
+    /*
+     * Runs after RatingAggregateService has applied the change
+     */
+    @Order(1)
+    @EventListener
+    public void onRatingChanged(TourRatingChangedEvent event) {
+        swap.readLock().lock();
+        try {
+            if (changed != null) changed.add(event.getTourId());
+            update(board, event.getTourId());
+        } finally {
+            swap.readLock().unlock();
+        }
+    }
+
+    /*
+     * Re-position one tour from its current aggregate, read inside compute so the latest one wins
+     */
+    private void update(Board board, int tourId) {
+        board.current.compute(tourId, (id, previous) ->
+                board.reposition(id, previous, ratingAggregateService.get(id).orElse(null)));
+    }
+
+    /**
+     * A ranking and the entry of every ranked tour in it.
+     */
+    private static class Board {
+        private final ConcurrentSkipListSet<TourRanking> ranking = new ConcurrentSkipListSet<>(BEST_FIRST);
+        private final ConcurrentMap<Integer, TourRanking> current = new ConcurrentHashMap<>();
+
+        /*
+         * Re-position one tour; compute serializes concurrent updates of the same tour
+         */
+        void update(int tourId, RatingAggregate aggregate) {
+            current.compute(tourId, (id, previous) -> reposition(id, previous, aggregate));
+        }
+
+        TourRanking reposition(int tourId, TourRanking previous, RatingAggregate aggregate) {
+            if (previous != null) ranking.remove(previous);
+            if (aggregate == null || aggregate.getCount() == 0) return null;
+            TourRanking updated = new TourRanking(tourId, aggregate.getAverage(), aggregate.getCount());
+            ranking.add(updated);
+            return updated;
+        }
+    }
+}
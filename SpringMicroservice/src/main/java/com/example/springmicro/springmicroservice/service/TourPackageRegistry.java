@@ -0,0 +1,68 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.TourPackage;
+import com.example.springmicro.springmicroservice.domain.TourPackageChangedEvent;
+import com.example.springmicro.springmicroservice.repository.TourPackageRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Every TourPackage, indexed by code and by name.
+ *
+ * There are only a handful of packages, so they are read once at startup and kept as immutable maps
+ * that are replaced whenever a TourPackageChangedEvent is published; lookups never query the database.
+ */
+@Service
+public class TourPackageRegistry {
+    private volatile Map<String, TourPackage> byCode = Map.of();
+    private volatile Map<String, TourPackage> byName = Map.of();
+
+    private TourPackageRepository tourPackageRepository;
+
+    @Autowired
+    public TourPackageRegistry(TourPackageRepository tourPackageRepository) {
+        this.tourPackageRepository = tourPackageRepository;
+    }
+
+    @PostConstruct
+    public void load() {
+        Map<String, TourPackage> codes = new HashMap<>();
+        tourPackageRepository.findAll().forEach(tourPackage -> codes.put(tourPackage.getCode(), tourPackage));
+        publish(codes);
+    }
+
+    public Optional<TourPackage> findByCode(String code) {
+        return Optional.ofNullable(byCode.get(code));
+    }
+
+    public Optional<TourPackage> findByName(String name) {
+        return Optional.ofNullable(byName.get(name));
+    }
+
+    public Collection<TourPackage> all() {
+        return byCode.values();
+    }
+
+    @Order(0)
+    @EventListener
+    public synchronized void onTourPackageChanged(TourPackageChangedEvent event) {
+        Map<String, TourPackage> codes = new HashMap<>(byCode);
+        codes.put(event.getTourPackage().getCode(), event.getTourPackage());
+        publish(codes);
+    }
+
+    private void publish(Map<String, TourPackage> codes) {
+        Map<String, TourPackage> names = new HashMap<>();
+        codes.values().forEach(tourPackage -> names.put(tourPackage.getName(), tourPackage));
+        byName = Map.copyOf(names);
+        byCode = Map.copyOf(codes);
+    }
+}
@@ -1,31 +1,45 @@
 package com.example.springmicro.springmicroservice.service;
 
 import com.example.springmicro.springmicroservice.domain.TourPackage;
+import com.example.springmicro.springmicroservice.domain.TourPackageChangedEvent;
 import com.example.springmicro.springmicroservice.repository.TourPackageRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 @Service
 public class TourPackageService {
 
     private TourPackageRepository tourPackageRepository;
+    private TourPackageRegistry tourPackageRegistry;
+    private ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public TourPackageService(TourPackageRepository tourPackageRepository) {
+    public TourPackageService(TourPackageRepository tourPackageRepository, TourPackageRegistry tourPackageRegistry,
+                              ApplicationEventPublisher eventPublisher) {
         this.tourPackageRepository = tourPackageRepository;
+        this.tourPackageRegistry = tourPackageRegistry;
+        this.eventPublisher = eventPublisher;
     }
 
+    /**
+     * Create a TourPackage unless one with the code exists; existing packages are found without a database query.
+     */
     public TourPackage createTourPackage(String code, String name) {
 
-        return tourPackageRepository.findById(code)
-                .orElse(tourPackageRepository.save(new TourPackage(code, name)));
+        return tourPackageRegistry.findByCode(code)
+                .orElseGet(() -> {
+                    TourPackage tourPackage = tourPackageRepository.save(new TourPackage(code, name));
+                    eventPublisher.publishEvent(new TourPackageChangedEvent(tourPackage));
+                    return tourPackage;
+                });
     }
 
     public Iterable<TourPackage> lookup() {
-        return tourPackageRepository.findAll();
+        return tourPackageRegistry.all();
     }
 
     public long total() {
-        return tourPackageRepository.count();
+        return tourPackageRegistry.all().size();
     }
 }
@@ -0,0 +1,37 @@
+package com.example.springmicro.springmicroservice.service;
+
+/**
+ * Position of a tour on the leaderboard: its average rating and number of ratings.
+ */
+public class TourRanking {
+    private final int tourId;
+    private final double average;
+    private final long count;
+
+    TourRanking(int tourId, double average, long count) {
+        this.tourId = tourId;
+        this.average = average;
+        this.count = count;
+    }
+
+    public int getTourId() {
+        return tourId;
+    }
+
+    public double getAverage() {
+        return average;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "TourRanking{" +
+                "tourId=" + tourId +
+                ", average=" + average +
+                ", count=" + count +
+                '}';
+    }
+}
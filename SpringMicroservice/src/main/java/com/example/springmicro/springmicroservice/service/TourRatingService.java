@@ -0,0 +1,334 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.TourRating;
+import com.example.springmicro.springmicroservice.domain.TourRatingPk;
+import com.example.springmicro.springmicroservice.repository.CustomerRatingSummary;
+import com.example.springmicro.springmicroservice.repository.RatingSummary;
+import com.example.springmicro.springmicroservice.repository.ShardedTourRatingRepository;
+import com.example.springmicro.springmicroservice.repository.TourRatingBatchRepository;
+import com.example.springmicro.springmicroservice.repository.TourRatingRepository;
+import com.example.springmicro.springmicroservice.repository.TourRepository;
+import com.example.springmicro.springmicroservice.repository.TourScoreCount;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads and writes of TourRatings, wherever they are kept: the tour_rating table, the write-behind
+ * buffer on its way there, or the rating shards when ratings are sharded.
+ */
+@Service
+public class TourRatingService {
+    static final int UPDATE_ATTEMPTS = 10;
+
+    private TourRatingRepository tourRatingRepository;
+    private TourRatingBatchRepository tourRatingBatchRepository;
+    private ShardedTourRatingRepository shardedTourRatingRepository;
+    private TourRepository tourRepository;
+    private RatingWriteBehindBuffer writeBehindBuffer;
+
+    @Autowired
+    public TourRatingService(TourRatingRepository tourRatingRepository,
+                             TourRatingBatchRepository tourRatingBatchRepository,
+                             ShardedTourRatingRepository shardedTourRatingRepository,
+                             TourRepository tourRepository,
+                             RatingWriteBehindBuffer writeBehindBuffer) {
+        this.tourRatingRepository = tourRatingRepository;
+        this.tourRatingBatchRepository = tourRatingBatchRepository;
+        this.shardedTourRatingRepository = shardedTourRatingRepository;
+        this.tourRepository = tourRepository;
+        this.writeBehindBuffer = writeBehindBuffer;
+    }
+
+    private boolean sharded() {
+        return shardedTourRatingRepository.isEnabled();
+    }
+
+    /**
+     * Find the rating of a customer for a tour, including one still waiting in the write-behind buffer.
+     *
+     * @param tourId     tour identifier
+     * @param customerId customer identifier
+     * @return the rating, if any
+     */
+    public Optional<TourRating> find(int tourId, int customerId) {
+        if (writeBehindBuffer.isEnabled()) {
+            Optional<TourRating> buffered = writeBehindBuffer.get(tourId, customerId);
+            if (buffered.isPresent()) return buffered;
+        }
+        if (sharded()) {
+            return shardedTourRatingRepository.findSummary(tourId, customerId)
+                    .flatMap(summary -> tourRepository.findById(tourId).map(tour ->
+                            new TourRating(new TourRatingPk(tour, customerId), summary.getScore(), summary.getComment())));
+        }
+        return tourRatingRepository.findByPkTourIdAndPkCustomerId(tourId, customerId);
+    }
+
+    /**
+     * @return true if the customer has rated the tour, including a rating still waiting in the buffer
+     */
+    public boolean exists(int tourId, int customerId) {
+        return (writeBehindBuffer.isEnabled() && writeBehindBuffer.get(tourId, customerId).isPresent())
+                || (sharded() ? shardedTourRatingRepository.findSummary(tourId, customerId).isPresent()
+                : tourRatingRepository.existsByTourIdAndCustomerId(tourId, customerId));
+    }
+
+    /**
+     * Create a rating. In write-behind mode a copy of the rating is buffered, replacing any pending write
+     * of it, and written with a later batch; otherwise it is inserted right away, on its shard when
+     * ratings are sharded.
+     *
+     * @param rating the rating to write
+     * @return the rating as written
+     * @throws java.util.concurrent.RejectedExecutionException if the write-behind buffer is full
+     * @throws org.springframework.dao.DataIntegrityViolationException if the rating is inserted and the
+     *                                                                   customer already rated the tour
+     */
+    public TourRating save(TourRating rating) {
+        if (writeBehindBuffer.isEnabled()) {
+            TourRating copy = new TourRating(rating.getPk(), rating.getScore(), rating.getComment());
+            writeBehindBuffer.put(copy);
+            return copy;
+        }
+        if (sharded()) {
+            shardedTourRatingRepository.insertAll(List.of(rating));
+            return rating;
+        }
+        return tourRatingRepository.save(rating);
+    }
+
+    /**
+     * Update the score and comment of a rating.
+     *
+     * The rating is read once and written with a single UPDATE that only matches the version that was
+     * read, so a concurrent update is never overwritten. Without an expected version a lost race is
+     * retried on the newer rating. In write-behind mode the buffered rating is replaced instead, and
+     * only the expected version is checked. The read runs in the read-write transaction of the update,
+     * so it sees the primary even when reads are routed to a replica.
+     *
+     * @param tourId          tour identifier
+     * @param customerId      customer identifier
+     * @param score           new score; with partial, null keeps the current score
+     * @param comment         new comment; with partial, null keeps the current comment
+     * @param expectedVersion version the caller last saw, null to update the current version
+     * @param partial         true to only change the non-null fields
+     * @return the rating as written, with its previous score
+     * @throws NoSuchElementException            if the customer has not rated the tour
+     * @throws OptimisticLockingFailureException if the rating does not have the expected version, or
+     *                                           kept changing for UPDATE_ATTEMPTS attempts
+     */
+    @Transactional
+    public RatingUpdate update(int tourId, int customerId, Integer score, String comment, Integer expectedVersion,
+                               boolean partial) {
+        if (writeBehindBuffer.isEnabled()) {
+            TourRating rating = find(tourId, customerId).orElseThrow(() -> notFound(tourId, customerId));
+            checkVersion(expectedVersion, rating.getVersion(), tourId, customerId);
+            int oldScore = rating.getScore();
+            TourRating updated = save(new TourRating(rating.getPk(), partial && score == null ? oldScore : score,
+                    partial && comment == null ? rating.getComment() : comment));
+            return new RatingUpdate(customerId, oldScore, updated.getScore(), updated.getComment(), rating.getVersion());
+        }
+        for (int attempt = 0; attempt < UPDATE_ATTEMPTS; attempt++) {
+            RatingSummary current = (sharded()
+                    ? shardedTourRatingRepository.findSummary(tourId, customerId).map(RatingSummary.class::cast)
+                    : tourRatingRepository.findSummaryByTourIdAndCustomerId(tourId, customerId))
+                    .orElseThrow(() -> notFound(tourId, customerId));
+            checkVersion(expectedVersion, current.getVersion(), tourId, customerId);
+            Integer newScore = partial && score == null ? current.getScore() : score;
+            String newComment = partial && comment == null ? current.getComment() : comment;
+            int updated = sharded()
+                    ? shardedTourRatingRepository.updateIfVersion(tourId, customerId, newScore, newComment,
+                    current.getVersion())
+                    : tourRatingRepository.updateIfVersion(tourId, customerId, newScore, newComment,
+                    current.getVersion());
+            if (updated == 1) {
+                return new RatingUpdate(customerId, current.getScore(), newScore, newComment, current.getVersion() + 1);
+            }
+        }
+        throw new OptimisticLockingFailureException("Rating of customer " + customerId + " for tour " + tourId
+                + " kept changing, try again");
+    }
+
+    private static void checkVersion(Integer expected, Integer actual, int tourId, int customerId) {
+        if (expected != null && !expected.equals(actual)) {
+            throw new OptimisticLockingFailureException("Rating of customer " + customerId + " for tour " + tourId
+                    + " has version " + actual + ", not " + expected);
+        }
+    }
+
+    private static NoSuchElementException notFound(int tourId, int customerId) {
+        return new NoSuchElementException("Tour-Rating pair for request(" + tourId + " for customer" + customerId);
+    }
+
+    /**
+     * Delete a rating, whether it is stored or still waiting in the write-behind buffer.
+     *
+     * The stored row is deleted with a single statement, so of concurrent deletes of the same rating
+     * only one sees it deleted.
+     *
+     * @param rating the rating to delete
+     * @return true if this call deleted the rating, false if it was already gone
+     */
+    public boolean delete(TourRating rating) {
+        if (writeBehindBuffer.isEnabled()) {
+            int[] stored = new int[1];
+            boolean buffered = writeBehindBuffer.remove(rating.getPk().getTour().getId(),
+                    rating.getPk().getCustomerId(), () -> stored[0] = deleteStored(rating)).isPresent();
+            return buffered || stored[0] == 1;
+        }
+        return deleteStored(rating) == 1;
+    }
+
+    private int deleteStored(TourRating rating) {
+        int tourId = rating.getPk().getTour().getId();
+        int customerId = rating.getPk().getCustomerId();
+        return sharded() ? shardedTourRatingRepository.delete(tourId, customerId)
+                : tourRatingRepository.deleteByTourIdAndCustomerId(tourId, customerId);
+    }
+
+    /**
+     * Hand every rating of a tour to a consumer, one row at a time, in customer order.
+     *
+     * Rows are streamed from the database cursor inside a read-only transaction, so memory use
+     * does not depend on the number of ratings.
+     *
+     * @param tourId tour identifier
+     * @param action called for every rating
+     * @return number of ratings visited
+     */
+    @Transactional(readOnly = true)
+    public long forEachRating(int tourId, Consumer<RatingSummary> action) {
+        if (sharded()) {
+            return shardedTourRatingRepository.forEachByTourId(tourId, action);
+        }
+        long count = 0;
+        try (Stream<RatingSummary> ratings = tourRatingRepository.streamSummariesByTourId(tourId)) {
+            Iterator<RatingSummary> iterator = ratings.iterator();
+            while (iterator.hasNext()) {
+                action.accept(iterator.next());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Insert the ratings of one tour whose customer has not rated the tour yet.
+     *
+     * Existing customers are found with a single IN query and the rest are written in JDBC batches,
+     * both in the same transaction, of the tour's shard when ratings are sharded. Ratings waiting in
+     * the write-behind buffer count as existing.
+     *
+     * @param tourId  tour identifier
+     * @param ratings ratings for the tour, at most one per customer
+     * @return customer ids of the ratings that were inserted
+     */
+    @Transactional
+    public Set<Integer> createMissing(int tourId, List<TourRating> ratings) {
+        if (ratings.isEmpty()) {
+            return Set.of();
+        }
+        if (sharded()) {
+            return shardedTourRatingRepository.inTransaction(tourId, () -> insertMissing(tourId, ratings));
+        }
+        return insertMissing(tourId, ratings);
+    }
+
+    private Set<Integer> insertMissing(int tourId, List<TourRating> ratings) {
+        List<Integer> customerIds = ratings.stream().map(rating -> rating.getPk().getCustomerId())
+                .collect(Collectors.toList());
+        Set<Integer> existing = new HashSet<>(sharded()
+                ? shardedTourRatingRepository.findCustomerIdsByTourIdAndCustomerIdIn(tourId, customerIds)
+                : tourRatingRepository.findCustomerIdsByTourIdAndCustomerIdIn(tourId, customerIds));
+        List<TourRating> missing = ratings.stream()
+                .filter(rating -> !existing.contains(rating.getPk().getCustomerId()))
+                .filter(rating -> !writeBehindBuffer.isEnabled()
+                        || writeBehindBuffer.get(tourId, rating.getPk().getCustomerId()).isEmpty())
+                .collect(Collectors.toList());
+        if (sharded()) {
+            shardedTourRatingRepository.insertAll(missing);
+        } else {
+            tourRatingBatchRepository.insertAll(missing);
+        }
+        return missing.stream().map(rating -> rating.getPk().getCustomerId()).collect(Collectors.toSet());
+    }
+
+    /**
+     * @param tourId tour identifier
+     * @return every rating of the tour
+     */
+    public List<RatingSummary> findSummaries(int tourId) {
+        return sharded() ? shardedTourRatingRepository.findSummariesByTourId(tourId)
+                : tourRatingRepository.findSummariesByTourId(tourId);
+    }
+
+    /**
+     * @param tourId   tour identifier
+     * @param pageable page and sort
+     * @return a page of the ratings of the tour
+     */
+    public Page<RatingSummary> findSummaries(int tourId, Pageable pageable) {
+        return sharded() ? shardedTourRatingRepository.findSummariesByTourId(tourId, pageable)
+                : tourRatingRepository.findSummariesByTourId(tourId, pageable);
+    }
+
+    /**
+     * Seek the next ratings of a tour after a customer, in customer order.
+     *
+     * @param tourId     tour identifier
+     * @param customerId customer identifier of the last rating already returned
+     * @param limit      maximum number of ratings
+     * @return the next ratings
+     */
+    public List<RatingSummary> findSummariesAfterCustomer(int tourId, int customerId, int limit) {
+        return sharded() ? shardedTourRatingRepository.findSummariesByTourIdAfterCustomer(tourId, customerId, limit)
+                : tourRatingRepository.findSummariesByTourIdAfterCustomer(tourId, customerId, PageRequest.of(0, limit));
+    }
+
+    /**
+     * Seek the next ratings of a customer after a tour, in tour order, with the title of each tour.
+     * Sharded ratings are read from all shards in parallel and the titles looked up with one query.
+     *
+     * @param customerId customer identifier
+     * @param tourId     tour identifier of the last rating already returned
+     * @param limit      maximum number of ratings
+     * @return the next ratings
+     */
+    public List<CustomerRatingSummary> findCustomerSummariesAfterTour(int customerId, int tourId, int limit) {
+        if (!sharded()) {
+            return tourRatingRepository.findSummariesByCustomerIdAfterTour(customerId, tourId, PageRequest.of(0, limit));
+        }
+        List<ShardedTourRatingRepository.RatingRow> rows =
+                shardedTourRatingRepository.findSummariesByCustomerIdAfterTour(customerId, tourId, limit);
+        Map<Integer, String> titles = new HashMap<>();
+        tourRepository.findAllById(rows.stream().map(ShardedTourRatingRepository.RatingRow::getTourId)
+                .collect(Collectors.toList())).forEach(tour -> titles.put(tour.getId(), tour.getTitle()));
+        return rows.stream().<CustomerRatingSummary>map(row -> row.withTourTitle(titles.get(row.getTourId()))).collect(Collectors.toList());
+    }
+
+    /**
+     * Count the ratings of every tour grouped by score.
+     *
+     * @return one row per tour and score
+     */
+    public List<TourScoreCount> countByTourAndScore() {
+        return sharded() ? shardedTourRatingRepository.countByTourAndScore()
+                : tourRatingRepository.countByTourAndScore();
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.springmicro.springmicroservice.service;
+
+/**
+ * A Tour matching a full-text search, with its relevance score.
+ */
+public class TourSearchHit {
+    private final int id;
+    private final String title;
+    private final double score;
+
+    TourSearchHit(int id, String title, double score) {
+        this.id = id;
+        this.title = title;
+        this.score = score;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public double getScore() {
+        return score;
+    }
+}
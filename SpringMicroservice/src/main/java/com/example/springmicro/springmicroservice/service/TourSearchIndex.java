@@ -0,0 +1,226 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.Tour;
+import com.example.springmicro.springmicroservice.domain.TourChangedEvent;
+import com.example.springmicro.springmicroservice.repository.TourRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over the title, keywords and description of every Tour.
+ *
+ * Each field maps a term to a sorted array of tour ids. A search scores every tour containing
+ * at least one query term with the sum of field weight * idf over the matched terms and fields,
+ * so tours matching more (and rarer) terms in more important fields rank first.
+ * The index is built at startup and kept current from TourChangedEvents. A rebuild reads the tours
+ * into a new index and swaps it in; the tours changed while it reads are replayed onto the new index
+ * first, so a change the pages read before it was committed is not lost.
+ */
+@Service
+public class TourSearchIndex {
+    private static final Logger log = LoggerFactory.getLogger(TourSearchIndex.class);
+    private static final int REBUILD_PAGE_SIZE = 1000;
+
+    enum Field {
+        TITLE(3.0), KEYWORDS(2.0), DESCRIPTION(1.0);
+
+        private final double weight;
+
+        Field(double weight) {
+            this.weight = weight;
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Index index = new Index();
+    // tours changed while a rebuild runs, null when none does; guarded by lock
+    private List<Tour> replay;
+
+    private TourRepository tourRepository;
+
+    @Autowired
+    public TourSearchIndex(TourRepository tourRepository) {
+        this.tourRepository = tourRepository;
+    }
+
+    /**
+     * Search the index.
+     *
+     * @param query free text, split into terms the same way tours are
+     * @param limit maximum number of hits
+     * @return the best matching tours, highest score first
+     */
+    public List<TourSearchHit> search(String query, int limit) {
+        Set<String> terms = tokenize(query);
+        lock.readLock().lock();
+        try {
+            Map<Integer, Double> scores = new HashMap<>();
+            for (String term : terms) {
+                for (Field field : Field.values()) {
+                    PostingList postings = index.postings.get(field).get(term);
+                    if (postings == null) continue;
+                    double weight = field.weight * Math.log(1 + (double) index.docs.size() / postings.size);
+                    for (int i = 0; i < postings.size; i++) {
+                        scores.merge(postings.ids[i], weight, Double::sum);
+                    }
+                }
+            }
+            List<TourSearchHit> hits = new ArrayList<>(scores.size());
+            scores.forEach((id, score) -> hits.add(new TourSearchHit(id, index.docs.get(id).title, score)));
+            hits.sort(Comparator.comparingDouble(TourSearchHit::getScore).reversed()
+                    .thenComparingInt(TourSearchHit::getId));
+            return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuild the index from every stored Tour, reading them in id order one page at a time.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        setReplay(new ArrayList<>());
+        Index rebuilt = new Index();
+        try {
+            List<Tour> page = tourRepository.findWithTextByIdGreaterThan(Integer.MIN_VALUE,
+                    PageRequest.of(0, REBUILD_PAGE_SIZE));
+            while (!page.isEmpty()) {
+                page.forEach(rebuilt::put);
+                page = tourRepository.findWithTextByIdGreaterThan(page.get(page.size() - 1).getId(),
+                        PageRequest.of(0, REBUILD_PAGE_SIZE));
+            }
+        } catch (RuntimeException ex) {
+            setReplay(null);
+            throw ex;
+        }
+        int replayed;
+        lock.writeLock().lock();
+        try {
+            replayed = replay.size();
+            replay.forEach(rebuilt::put);
+            replay = null;
+            index = rebuilt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Rebuilt tour search index with {} tours, replaying {} changes", rebuilt.docs.size(), replayed);
+    }
+
+    private void setReplay(List<Tour> replay) {
+        lock.writeLock().lock();
+        try {
+            this.replay = replay;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventListener
+    public void onToursChanged(TourChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (replay != null) replay.addAll(event.getTours());
+            event.getTours().forEach(index::put);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    static Set<String> tokenize(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null) return terms;
+        for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{Alnum}]+")) {
+            if (token.length() > 1) terms.add(token);
+        }
+        return terms;
+    }
+
+    /*
+     * Postings and indexed documents; guarded by the enclosing lock once published
+     */
+    private static class Index {
+        final Map<Field, Map<String, PostingList>> postings = new EnumMap<>(Field.class);
+        final Map<Integer, IndexedTour> docs = new HashMap<>();
+
+        Index() {
+            for (Field field : Field.values()) {
+                postings.put(field, new HashMap<>());
+            }
+        }
+
+        void put(Tour tour) {
+            IndexedTour previous = docs.remove(tour.getId());
+            if (previous != null) {
+                previous.terms.forEach((field, terms) -> terms.forEach(term -> {
+                    PostingList list = postings.get(field).get(term);
+                    if (list.remove(tour.getId()) == 0) postings.get(field).remove(term);
+                }));
+            }
+            IndexedTour indexed = new IndexedTour(tour.getTitle());
+            indexed.terms.put(Field.TITLE, tokenize(tour.getTitle()));
+            indexed.terms.put(Field.KEYWORDS, tokenize(tour.getKeywords()));
+            indexed.terms.put(Field.DESCRIPTION, tokenize(tour.getDescription()));
+            indexed.terms.forEach((field, terms) -> terms.forEach(term ->
+                    postings.get(field).computeIfAbsent(term, t -> new PostingList()).add(tour.getId())));
+            docs.put(tour.getId(), indexed);
+        }
+    }
+
+    private static class IndexedTour {
+        final String title;
+        final Map<Field, Set<String>> terms = new EnumMap<>(Field.class);
+
+        IndexedTour(String title) {
+            this.title = title;
+        }
+    }
+
+    /*
+     * Sorted, duplicate free array of tour ids
+     */
+    private static class PostingList {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) return;
+            at = -at - 1;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+
+        /**
+         * @return the remaining size
+         */
+        int remove(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) {
+                System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+                size--;
+            }
+            return size;
+        }
+    }
+}
@@ -3,30 +3,38 @@ package com.example.springmicro.springmicroservice.service;
 import com.example.springmicro.springmicroservice.domain.Difficulty;
 import com.example.springmicro.springmicroservice.domain.Region;
 import com.example.springmicro.springmicroservice.domain.Tour;
+import com.example.springmicro.springmicroservice.domain.TourChangedEvent;
 import com.example.springmicro.springmicroservice.domain.TourPackage;
-import com.example.springmicro.springmicroservice.repository.TourPackageRepository;
 import com.example.springmicro.springmicroservice.repository.TourRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
 @Service
 public class TourService {
     private TourRepository tourRepository;
-    private TourPackageRepository tourPackageRepository;
+    private TourPackageRegistry tourPackageRegistry;
+    private ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public TourService(TourRepository tourRepository, TourPackageRepository tourPackageRepository) {
+    public TourService(TourRepository tourRepository, TourPackageRegistry tourPackageRegistry,
+                       ApplicationEventPublisher eventPublisher) {
         this.tourRepository = tourRepository;
-        this.tourPackageRepository = tourPackageRepository;
+        this.tourPackageRegistry = tourPackageRegistry;
+        this.eventPublisher = eventPublisher;
     }
 
     public Tour createTour(String title, String description, String blurb, Integer price,
                            String duration, String bullets,
                            String keywords, String tourPackageName, Difficulty difficulty, Region region ){
-        TourPackage tourPackage = tourPackageRepository.findByName(tourPackageName)
+        TourPackage tourPackage = tourPackageRegistry.findByName(tourPackageName)
                 .orElseThrow(() -> new RuntimeException("Tour Package does not exists"));
-        return tourRepository.save(new Tour(title, description, blurb,
+        Tour tour = tourRepository.save(new Tour(title, description, blurb,
                 price, duration, bullets, keywords, tourPackage, difficulty, region));
+        eventPublisher.publishEvent(new TourChangedEvent(List.of(tour)));
+        return tour;
     }
 
     public long total() {
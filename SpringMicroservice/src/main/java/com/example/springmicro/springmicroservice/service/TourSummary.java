@@ -0,0 +1,50 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.Difficulty;
+import com.example.springmicro.springmicroservice.domain.Region;
+import com.example.springmicro.springmicroservice.domain.Tour;
+
+/**
+ * The list-page columns of a Tour, held in memory by the facet index and returned by Tour listings.
+ */
+public class TourSummary {
+    private final int id;
+    private final String title;
+    private final Integer price;
+    private final Region region;
+    private final Difficulty difficulty;
+    private final String tourPackageCode;
+
+    public TourSummary(Tour tour) {
+        this.id = tour.getId();
+        this.title = tour.getTitle();
+        this.price = tour.getPrice();
+        this.region = tour.getRegion();
+        this.difficulty = tour.getDifficulty();
+        this.tourPackageCode = tour.getTourPackage() == null ? null : tour.getTourPackage().getCode();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public Integer getPrice() {
+        return price;
+    }
+
+    public Region getRegion() {
+        return region;
+    }
+
+    public Difficulty getDifficulty() {
+        return difficulty;
+    }
+
+    public String getTourPackageCode() {
+        return tourPackageCode;
+    }
+}
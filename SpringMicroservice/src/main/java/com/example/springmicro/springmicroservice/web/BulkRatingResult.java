@@ -0,0 +1,30 @@
+package com.example.springmicro.springmicroservice.web;
+
+/**
+ * Outcome of one item of a bulk rating request.
+ */
+public class BulkRatingResult {
+    public enum Status { CREATED, ALREADY_EXISTS, INVALID }
+
+    private final Integer customerId;
+    private final Status status;
+    private final String message;
+
+    BulkRatingResult(Integer customerId, Status status, String message) {
+        this.customerId = customerId;
+        this.status = status;
+        this.message = message;
+    }
+
+    public Integer getCustomerId() {
+        return customerId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
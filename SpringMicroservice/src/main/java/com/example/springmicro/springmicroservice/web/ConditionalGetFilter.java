@@ -0,0 +1,152 @@
+package com.example.springmicro.springmicroservice.web;
+
+import com.example.springmicro.springmicroservice.service.ResourceVersions;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Conditional GET for /tours, /packages, /tours/{tourId}/ratings, /tours/top and /tours/histograms,
+ * including the Spring Data REST resources; the rating event streams are left alone.
+ *
+ * The strong ETag is derived from ResourceVersions (plus the Accept header, since the same URL can
+ * render differently), so a matching If-None-Match is answered with 304 before any handler runs
+ * and without touching the database. Successful responses get the ETag header.
+ * If-None-Match: * only matches a resource that exists, which the versions cannot tell, so the
+ * handler runs with its response held back and a success is replaced by 304.
+ */
+@Component
+public class ConditionalGetFilter extends OncePerRequestFilter {
+    private static final Pattern RATINGS_PATH = Pattern.compile("^/tours/(\\d{1,9})/ratings(/.*)?$");
+    // tour resources built from the ratings of every tour
+    private static final Set<String> ALL_RATINGS_PATHS = Set.of("/tours/top", "/tours/histograms");
+
+    private ResourceVersions resourceVersions;
+
+    @Autowired
+    public ConditionalGetFilter(ResourceVersions resourceVersions) {
+        this.resourceVersions = resourceVersions;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String etag = etagFor(request);
+        if (etag == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (matches(ifNoneMatch, etag)) {
+            notModified(response, etag);
+            return;
+        }
+        if (matches(ifNoneMatch, "*")) {
+            ContentCachingResponseWrapper held = new ContentCachingResponseWrapper(response);
+            chain.doFilter(request, held);
+            if (held.getStatus() >= 200 && held.getStatus() < 300) {
+                notModified(response, etag);
+            } else {
+                held.copyBodyToResponse();
+            }
+            return;
+        }
+        chain.doFilter(request, new EtagResponseWrapper(response, etag));
+    }
+
+    private static void notModified(HttpServletResponse response, String etag) {
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    }
+
+    /*
+     * Strong ETag of the requested resource, null if the request is not a covered GET
+     */
+    private String etagFor(HttpServletRequest request) {
+        if (!"GET".equals(request.getMethod()) && !"HEAD".equals(request.getMethod())) {
+            return null;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.endsWith("/events")) {
+            return null; // an event stream has no version, it is always live
+        }
+        String version;
+        Matcher ratings = RATINGS_PATH.matcher(path);
+        if (ratings.matches()) {
+            version = resourceVersions.ratings(Integer.parseInt(ratings.group(1)));
+        } else if (ALL_RATINGS_PATHS.contains(path)) {
+            version = resourceVersions.ratings();
+        } else if (path.equals("/tours") || path.startsWith("/tours/")) {
+            version = resourceVersions.tours();
+        } else if (path.equals("/packages") || path.startsWith("/packages/")) {
+            version = resourceVersions.packages();
+        } else {
+            return null;
+        }
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        return "\"" + version + "-" + Integer.toHexString(accept == null ? 0 : accept.hashCode()) + "\"";
+    }
+
+    /*
+     * Whether the If-None-Match list ("*" or ETags) holds the tag, strong comparison
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            if (candidate.trim().equals(etag)) return true;
+        }
+        return false;
+    }
+
+    /*
+     * Adds the ETag header when the body is first written, if the response is a success
+     */
+    private static class EtagResponseWrapper extends HttpServletResponseWrapper {
+        private final String etag;
+
+        EtagResponseWrapper(HttpServletResponse response, String etag) {
+            super(response);
+            this.etag = etag;
+        }
+
+        private void applyEtag() {
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            if (!response.isCommitted() && response.getStatus() >= 200 && response.getStatus() < 300
+                    && !response.containsHeader(HttpHeaders.ETAG)) {
+                response.setHeader(HttpHeaders.ETAG, etag);
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            applyEtag();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            applyEtag();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            applyEtag();
+            super.flushBuffer();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.springmicro.springmicroservice.web;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * One page of a keyset (seek) paginated listing.
+ *
+ * The cursor is an opaque token holding the key of the last returned row; the next page is
+ * read with "key > cursor order by key limit size", so there is no offset to skip and no count query.
+ *
+ * @param <T> type of the page content
+ */
+public class CursorPage<T> {
+    static final int DEFAULT_SIZE = 20;
+    static final int MAX_SIZE = 100;
+
+    private final List<T> content;
+    private final String nextCursor;
+
+    private CursorPage(List<T> content, String nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Build a page from a query that fetched one row more than the page size.
+     *
+     * @param rows   up to size + 1 rows in key order
+     * @param size   requested page size
+     * @param mapper maps a row to the page content
+     * @param keyOf  extracts the seek key of a row
+     */
+    static <R, T> CursorPage<T> of(List<R> rows, int size, Function<R, T> mapper, Function<R, int[]> keyOf) {
+        boolean hasNext = rows.size() > size;
+        List<R> page = hasNext ? rows.subList(0, size) : rows;
+        String nextCursor = hasNext ? encode(keyOf.apply(page.get(size - 1))) : null;
+        return new CursorPage<>(page.stream().map(mapper).collect(Collectors.toList()), nextCursor);
+    }
+
+    /**
+     * Clamp a requested page size to 1..MAX_SIZE.
+     */
+    static int pageSize(Integer size) {
+        return size == null ? DEFAULT_SIZE : Math.max(1, Math.min(MAX_SIZE, size));
+    }
+
+    static String encode(int... key) {
+        StringBuilder raw = new StringBuilder();
+        for (int part : key) {
+            if (raw.length() > 0) raw.append(':');
+            raw.append(part);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a cursor produced by {@link #encode}.
+     *
+     * @param cursor the opaque cursor
+     * @param parts  expected number of key parts
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    static int[] decode(String cursor, int parts) throws IllegalArgumentException {
+        try {
+            int[] key = Arrays.stream(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+                    .split(":")).mapToInt(Integer::parseInt).toArray();
+            if (key.length != parts) {
+                throw new IllegalArgumentException("Invalid cursor " + cursor);
+            }
+            return key;
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid cursor " + cursor, ex);
+        }
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
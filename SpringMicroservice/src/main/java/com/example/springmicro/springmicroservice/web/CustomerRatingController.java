@@ -0,0 +1,50 @@
+package com.example.springmicro.springmicroservice.web;
+
+import com.example.springmicro.springmicroservice.service.TourRatingService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Ratings of one customer across all Tours.
+ */
+@RestController
+@RequestMapping(path = "/customers/{customerId}/ratings")
+public class CustomerRatingController {
+
+    TourRatingService tourRatingService;
+
+    @Autowired
+    public CustomerRatingController(TourRatingService tourRatingService) {
+        this.tourRatingService = tourRatingService;
+    }
+
+    protected CustomerRatingController() {}
+
+    /*
+     * Keyset paginated ratings of a customer, in tour order, with the title of each Tour
+     * @param customerId, the cursor returned with the previous page (absent for the first page) and the page size
+     * @return the page and the cursor of the next one
+     * */
+    @GetMapping
+    public CursorPage<CustomerRatingDto> getRatings(@PathVariable(value = "customerId") int customerId,
+                                                    @RequestParam(required = false) String cursor,
+                                                    @RequestParam(required = false) Integer size) {
+        int afterTourId = Integer.MIN_VALUE;
+        if (cursor != null) {
+            int[] key = CursorPage.decode(cursor, 2);
+            if (key[0] != customerId)
+                throw new IllegalArgumentException("Cursor does not belong to customer " + customerId);
+            afterTourId = key[1];
+        }
+        int pageSize = CursorPage.pageSize(size);
+        return CursorPage.of(tourRatingService.findCustomerSummariesAfterTour(customerId, afterTourId, pageSize + 1),
+                pageSize, CustomerRatingDto::new, rating -> new int[]{customerId, rating.getTourId()});
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(IllegalArgumentException.class)
+    public String returnBadRequest(IllegalArgumentException ex) {
+        return ex.getMessage();
+    }
+}
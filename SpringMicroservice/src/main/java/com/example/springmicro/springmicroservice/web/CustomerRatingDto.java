@@ -0,0 +1,31 @@
+package com.example.springmicro.springmicroservice.web;
+
+import com.example.springmicro.springmicroservice.repository.CustomerRatingSummary;
+
+/**
+ * A RatingDto together with the Tour it rates, as listed for a customer.
+ */
+public class CustomerRatingDto extends RatingDto {
+    private Integer tourId;
+
+    private String tourTitle;
+
+    /**
+     * Construct a CustomerRatingDto from a CustomerRatingSummary projection.
+     *
+     * @param summary projected TourRating and Tour columns
+     */
+    public CustomerRatingDto(CustomerRatingSummary summary) {
+        super(summary);
+        this.tourId = summary.getTourId();
+        this.tourTitle = summary.getTourTitle();
+    }
+
+    public Integer getTourId() {
+        return tourId;
+    }
+
+    public String getTourTitle() {
+        return tourTitle;
+    }
+}
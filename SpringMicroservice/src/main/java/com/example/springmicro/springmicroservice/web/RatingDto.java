@@ -1,6 +1,7 @@
 package com.example.springmicro.springmicroservice.web;
 
 import com.example.springmicro.springmicroservice.domain.TourRating;
+import com.example.springmicro.springmicroservice.repository.RatingSummary;
 
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
@@ -19,25 +20,41 @@ public class RatingDto {
     @NotNull
     private Integer customerId;
 
+    // version of the rating; send it back with an update to have the update fail if the rating changed since
+    private Integer version;
+
     /**
      * Construct a RatingDto from a fully instantiated TourRating.
      *
      * @param tourRating Tour Rating Object
      */
     public RatingDto(TourRating tourRating) {
-        this(tourRating.getScore(), tourRating.getComment(), tourRating.getPk().getCustomerId());
+        this(tourRating.getScore(), tourRating.getComment(), tourRating.getPk().getCustomerId(),
+                tourRating.getVersion());
+    }
+    /**
+     * Construct a RatingDto from a RatingSummary projection.
+     *
+     * @param ratingSummary projected TourRating columns
+     */
+    public RatingDto(RatingSummary ratingSummary) {
+        this(ratingSummary.getScore(), ratingSummary.getComment(), ratingSummary.getCustomerId(),
+                ratingSummary.getVersion());
     }
+
     /**
      * Constructor to fully initialize the RatingDto
      *
      * @param score score 1-5
      * @param comment comment
      * @param customerId customer identifier
+     * @param version version of the rating
      */
-    private RatingDto(Integer score, String comment, Integer customerId) {
+    private RatingDto(Integer score, String comment, Integer customerId, Integer version) {
         this.score = score;
         this.comment = comment;
         this.customerId = customerId;
+        this.version = version;
     }
 
     protected RatingDto() {}
@@ -54,6 +71,14 @@ public class RatingDto {
         return customerId;
     }
 
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
     public void setScore(Integer score) {
         this.score = score;
     }
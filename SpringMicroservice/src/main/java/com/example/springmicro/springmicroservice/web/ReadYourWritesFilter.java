@@ -0,0 +1,64 @@
+package com.example.springmicro.springmicroservice.web;
+
+import com.example.springmicro.springmicroservice.repository.ReadWriteRoutingDataSource;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Read-your-writes across requests when reads go to a replica: a client that committed a write gets
+ * a primary-until cookie, the epoch millis until which the replica may not have the write yet, and
+ * the requests that send it back read from the primary until then.
+ *
+ * The cookie is trusted for at most maxLagMillis, so a client cannot pin itself to the primary.
+ * Registered by ReadWriteDataSourceConfig, only when a replica is configured.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+    public static final String COOKIE = "primary-until";
+
+    private long maxLagMillis;
+
+    public ReadYourWritesFilter(long maxLagMillis) {
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long now = System.currentTimeMillis();
+        ReadWriteRoutingDataSource.bindClient(Math.min(primaryUntil(request), now + maxLagMillis), primaryUntil -> {
+            Cookie cookie = new Cookie(COOKIE, Long.toString(primaryUntil));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.max(1, (primaryUntil - System.currentTimeMillis() + 999) / 1000));
+            response.addCookie(cookie);
+        });
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ReadWriteRoutingDataSource.unbindClient();
+        }
+    }
+
+    /*
+     * The time the client carries, 0 if none
+     */
+    private static long primaryUntil(HttpServletRequest request) {
+        if (request.getCookies() == null) return 0;
+        for (Cookie cookie : request.getCookies()) {
+            if (COOKIE.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException ex) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+}
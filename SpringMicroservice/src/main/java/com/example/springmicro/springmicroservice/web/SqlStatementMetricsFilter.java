@@ -0,0 +1,53 @@
+package com.example.springmicro.springmicroservice.web;
+
+import com.example.springmicro.springmicroservice.repository.StatementCountingDataSource;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Records the SQL statements each request sent to the databases as http.server.requests.sql, tagged
+ * like http.server.requests with the method and the matched URI pattern, so a handler that starts
+ * issuing N+1 queries shows up next to its latency.
+ *
+ * Statements run on other threads (write-behind flushes, shard fan-out) are not part of the count.
+ */
+@Component
+public class SqlStatementMetricsFilter extends OncePerRequestFilter {
+    private static final double[] BUCKETS = {1, 2, 3, 5, 10, 20, 50, 100, 200, 500, 1000};
+
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    public SqlStatementMetricsFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        StatementCountingDataSource.reset();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            DistributionSummary.builder("http.server.requests.sql")
+                    .description("SQL statements sent while serving a request")
+                    .baseUnit("statements")
+                    .tag("method", request.getMethod())
+                    .tag("uri", pattern == null ? "UNKNOWN" : pattern.toString())
+                    .serviceLevelObjectives(BUCKETS)
+                    .register(meterRegistry)
+                    .record(StatementCountingDataSource.count());
+        }
+    }
+}
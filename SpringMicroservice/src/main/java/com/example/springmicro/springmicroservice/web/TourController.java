@@ -0,0 +1,128 @@
+package com.example.springmicro.springmicroservice.web;
+
+import com.example.springmicro.springmicroservice.domain.Tour;
+import com.example.springmicro.springmicroservice.repository.TourRepository;
+import com.example.springmicro.springmicroservice.service.FacetResult;
+import com.example.springmicro.springmicroservice.service.RatingAggregateService;
+import com.example.springmicro.springmicroservice.service.TourFacetIndex;
+import com.example.springmicro.springmicroservice.service.TourLeaderboard;
+import com.example.springmicro.springmicroservice.service.TourRanking;
+import com.example.springmicro.springmicroservice.service.TourSearchHit;
+import com.example.springmicro.springmicroservice.service.TourSearchIndex;
+import com.example.springmicro.springmicroservice.service.TourSummary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tour endpoints that Spring Data REST does not provide.
+ */
+@RestController
+@RequestMapping(path = "/tours")
+public class TourController {
+
+    TourRepository tourRepository;
+    TourSearchIndex tourSearchIndex;
+    TourFacetIndex tourFacetIndex;
+    TourLeaderboard tourLeaderboard;
+    RatingAggregateService ratingAggregateService;
+
+    @Autowired
+    public TourController(TourRepository tourRepository, TourSearchIndex tourSearchIndex,
+                          TourFacetIndex tourFacetIndex, TourLeaderboard tourLeaderboard,
+                          RatingAggregateService ratingAggregateService) {
+        this.tourRepository = tourRepository;
+        this.tourSearchIndex = tourSearchIndex;
+        this.tourFacetIndex = tourFacetIndex;
+        this.tourLeaderboard = tourLeaderboard;
+        this.ratingAggregateService = ratingAggregateService;
+    }
+
+    protected TourController() {}
+
+    /*
+     * Keyset paginated Tours in id order, optionally limited to one TourPackage
+     * @param packageCode optional tour package code, the cursor returned with the previous page and the page size
+     * @return the page, as summaries without the long text columns, and the cursor of the next one
+     * */
+    @GetMapping(path = "/getAllTourByCursor")
+    public CursorPage<TourSummary> getAllToursByCursor(@RequestParam(required = false) String packageCode,
+                                                @RequestParam(required = false) String cursor,
+                                                @RequestParam(required = false) Integer size) {
+        int afterId = cursor == null ? Integer.MIN_VALUE : CursorPage.decode(cursor, 1)[0];
+        int pageSize = CursorPage.pageSize(size);
+        PageRequest limit = PageRequest.of(0, pageSize + 1);
+        List<Tour> tours = packageCode == null
+                ? tourRepository.findByIdGreaterThanOrderByIdAsc(afterId, limit)
+                : tourRepository.findByTourPackageCodeAndIdGreaterThanOrderByIdAsc(packageCode, afterId, limit);
+        return CursorPage.of(tours, pageSize, TourSummary::new, tour -> new int[]{tour.getId()});
+    }
+
+    /*
+     * Full-text search over the title, keywords and description of the Tours
+     * @param q search text and the maximum number of results
+     * @return the matching Tours, best match first
+     * Not under /tours/search, which is the Spring Data REST search resource of the TourRepository
+     * */
+    @GetMapping(path = "/fulltext")
+    public List<TourSearchHit> search(@RequestParam String q,
+                                      @RequestParam(defaultValue = "10") int limit) {
+        return tourSearchIndex.search(q, Math.max(1, Math.min(CursorPage.MAX_SIZE, limit)));
+    }
+
+    /*
+     * Filter the Tours by facet; repeat a parameter to accept several values of that facet
+     * @param region Region names, difficulty Difficulty names, package TourPackage codes,
+     *        price price bands (e.g. 500-999) and the maximum number of Tours returned
+     * @return the matching Tours and the number of Tours for every facet value
+     * */
+    @GetMapping(path = "/facets")
+    public FacetResult facets(@RequestParam(required = false) List<String> region,
+                              @RequestParam(required = false) List<String> difficulty,
+                              @RequestParam(name = "package", required = false) List<String> tourPackage,
+                              @RequestParam(required = false) List<String> price,
+                              @RequestParam(defaultValue = "20") int limit) {
+        Map<TourFacetIndex.Facet, List<String>> selected = new EnumMap<>(TourFacetIndex.Facet.class);
+        if (region != null) selected.put(TourFacetIndex.Facet.REGION, region);
+        if (difficulty != null) selected.put(TourFacetIndex.Facet.DIFFICULTY, difficulty);
+        if (tourPackage != null) selected.put(TourFacetIndex.Facet.PACKAGE, tourPackage);
+        if (price != null) selected.put(TourFacetIndex.Facet.PRICE, price);
+        return tourFacetIndex.filter(selected, Math.max(0, Math.min(CursorPage.MAX_SIZE, limit)));
+    }
+
+    /*
+     * Best rated Tours
+     * @param limit maximum number of Tours
+     * @return tour id, average score and number of ratings, best average first
+     * */
+    @GetMapping(path = "/top")
+    public List<TourRanking> top(@RequestParam(defaultValue = "10") int limit) {
+        return tourLeaderboard.top(Math.max(1, Math.min(CursorPage.MAX_SIZE, limit)));
+    }
+
+    /*
+     * Score histograms of many Tours in one request
+     * @param ids tour ids, at most 100
+     * @return tour id -> number of ratings of every score, indexed by score; all zero for a Tour without ratings
+     * */
+    @GetMapping(path = "/histograms")
+    public Map<Integer, long[]> histograms(@RequestParam List<Integer> ids) {
+        if (ids.size() > CursorPage.MAX_SIZE)
+            throw new IllegalArgumentException("At most " + CursorPage.MAX_SIZE + " tour ids per request");
+        Map<Integer, long[]> histograms = new LinkedHashMap<>();
+        ids.forEach(id -> histograms.put(id, ratingAggregateService.histogram(id)));
+        return histograms;
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(IllegalArgumentException.class)
+    public String returnBadRequest(IllegalArgumentException ex) {
+        return ex.getMessage();
+    }
+}
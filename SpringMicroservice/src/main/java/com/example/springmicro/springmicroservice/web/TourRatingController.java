@@ -2,34 +2,67 @@ package com.example.springmicro.springmicroservice.web;
 
 import com.example.springmicro.springmicroservice.domain.Tour;
 import com.example.springmicro.springmicroservice.domain.TourRating;
+import com.example.springmicro.springmicroservice.domain.TourRatingChangedEvent;
 import com.example.springmicro.springmicroservice.domain.TourRatingPk;
-import com.example.springmicro.springmicroservice.repository.TourRatingRepository;
+import com.example.springmicro.springmicroservice.repository.RatingSummary;
 import com.example.springmicro.springmicroservice.repository.TourRepository;
+import com.example.springmicro.springmicroservice.service.RatingAggregate;
+import com.example.springmicro.springmicroservice.service.RatingAggregateService;
+import com.example.springmicro.springmicroservice.service.RatingEventBroadcaster;
+import com.example.springmicro.springmicroservice.service.RatingUpdate;
+import com.example.springmicro.springmicroservice.service.TourRatingService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
 import javax.management.openmbean.KeyAlreadyExistsException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping(path = "/tours/{tourId}/ratings")
 public class TourRatingController {
 
-    TourRatingRepository tourRatingRepository;
     TourRepository tourRepository;
+    TourRatingService tourRatingService;
+    RatingAggregateService ratingAggregateService;
+    RatingEventBroadcaster ratingEventBroadcaster;
+    ApplicationEventPublisher eventPublisher;
+    ObjectMapper objectMapper;
 
     @Autowired
-    public TourRatingController(TourRatingRepository tourRatingRepository, TourRepository tourRepository) {
-        this.tourRatingRepository = tourRatingRepository;
+    public TourRatingController(TourRepository tourRepository, TourRatingService tourRatingService,
+                                RatingAggregateService ratingAggregateService,
+                                RatingEventBroadcaster ratingEventBroadcaster,
+                                ApplicationEventPublisher eventPublisher, ObjectMapper objectMapper) {
         this.tourRepository = tourRepository;
+        this.tourRatingService = tourRatingService;
+        this.ratingAggregateService = ratingAggregateService;
+        this.ratingEventBroadcaster = ratingEventBroadcaster;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
     }
 
     protected TourRatingController() {}
@@ -41,14 +74,39 @@ public class TourRatingController {
     @GetMapping(path = "/getAllRating")
     public List<RatingDto> getAllRatingsForTour(@PathVariable(value = "tourId") int tourId) {
         verifyTour(tourId);
-        return tourRatingRepository.findByPkTourId(tourId).stream()
+        return tourRatingService.findSummaries(tourId).stream()
                 .map(RatingDto::new).collect(Collectors.toList());
     }
 
+    /*
+     * Stream all the Ratings for a Tour as newline delimited JSON, one RatingDto per line
+     * Rows are written to the response as they are read, so memory use stays flat for any number of ratings.
+     * */
+    @GetMapping(path = "/streamAllRating", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void streamAllRatingsForTour(@PathVariable(value = "tourId") int tourId, HttpServletResponse response)
+            throws IOException {
+        verifyTour(tourId);
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())
+                .setRootValueSeparator(null)) {
+            tourRatingService.forEachRating(tourId, rating -> {
+                try {
+                    generator.writeObject(new RatingDto(rating));
+                    generator.writeRaw('\n');
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
     @GetMapping(path = "/getAllRatingByPagingAndSorting")
     public Page<RatingDto> getAllRatingsForTourByPaging(@PathVariable(value = "tourId") int tourId, Pageable pageable) {
         verifyTour(tourId);
-        Page<TourRating> ratings = tourRatingRepository.findByPkTourId(tourId, pageable);
+        Page<RatingSummary> ratings = tourRatingService.findSummaries(tourId, pageable);
         return new PageImpl<>(
                 ratings.get().map(RatingDto::new).collect(Collectors.toList()),
                 pageable,
@@ -56,22 +114,123 @@ public class TourRatingController {
         );
     }
 
+    /*
+     * Keyset paginated ratings of a Tour, in customer order
+     * @param tourId, the cursor returned with the previous page (absent for the first page) and the page size
+     * @return the page and the cursor of the next one
+     * */
+    @GetMapping(path = "/getAllRatingByCursor")
+    public CursorPage<RatingDto> getAllRatingsForTourByCursor(@PathVariable(value = "tourId") int tourId,
+                                                              @RequestParam(required = false) String cursor,
+                                                              @RequestParam(required = false) Integer size) {
+        verifyTour(tourId);
+        int afterCustomerId = Integer.MIN_VALUE;
+        if (cursor != null) {
+            int[] key = CursorPage.decode(cursor, 2);
+            if (key[0] != tourId)
+                throw new IllegalArgumentException("Cursor does not belong to tour " + tourId);
+            afterCustomerId = key[1];
+        }
+        int pageSize = CursorPage.pageSize(size);
+        return CursorPage.of(tourRatingService.findSummariesAfterCustomer(tourId, afterCustomerId, pageSize + 1),
+                pageSize, RatingDto::new, rating -> new int[]{tourId, rating.getCustomerId()});
+    }
+
     @GetMapping(path = "/average")
     public Map<String, Double> getAverage(@PathVariable(value = "tourId") int tourId) {
         verifyTour(tourId);
-        return Map.of("average", tourRatingRepository.findByPkTourId(tourId).stream()
-                .mapToInt(TourRating::getScore).average()
+        return Map.of("average", ratingAggregateService.get(tourId).map(RatingAggregate::getAverage)
                 .orElseThrow(() -> new NoSuchElementException("Tour has no Ratings")));
     }
 
+    /*
+     * Number of ratings of every score for a Tour
+     * @param tourId
+     * @return the counts indexed by score, 0 to 5
+     * */
+    @GetMapping(path = "/histogram")
+    public Map<String, long[]> getHistogram(@PathVariable(value = "tourId") int tourId) {
+        verifyTour(tourId);
+        return Map.of("histogram", ratingAggregateService.histogram(tourId));
+    }
+
+    /*
+     * Server-Sent Events of the rating changes of a Tour: a "rating" event for every rating created, updated
+     * or deleted, each followed by an "aggregate" event with the new count, average and histogram.
+     * The current aggregate is sent first. A client that falls too far behind is disconnected and should reconnect.
+     * @param tourId
+     * @return the event stream
+     * */
+    @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public void streamRatingEvents(@PathVariable(value = "tourId") int tourId, HttpServletRequest request,
+                                   HttpServletResponse response) throws IOException {
+        verifyTour(tourId);
+        ratingEventBroadcaster.subscribe(tourId, request, response);
+    }
+
     @PostMapping(path = "/createTourRating")
     @ResponseStatus(HttpStatus.CREATED)
     public void createTourRating(@PathVariable(value = "tourId") int tourId, @RequestBody @Validated RatingDto ratingDto) {
         Tour tour = verifyTour(tourId);
-        if(!verifyCustomerRatingNotPresent(tourId, ratingDto.getCustomerId()))
-            tourRatingRepository.save(new TourRating(new TourRatingPk(
-                    tour, ratingDto.getCustomerId()), ratingDto.getScore(), ratingDto.getComment()
-            ));
+        String invalid = validateForCreate(ratingDto);
+        if (invalid != null) {
+            throw new IllegalArgumentException(invalid);
+        }
+        if(!verifyCustomerRatingNotPresent(tourId, ratingDto.getCustomerId())) {
+            try {
+                tourRatingService.save(new TourRating(new TourRatingPk(
+                        tour, ratingDto.getCustomerId()), ratingDto.getScore(), ratingDto.getComment()
+                ));
+            } catch (DataIntegrityViolationException ex) {
+                // a concurrent request created the rating after the check
+                verifyCustomerRatingNotPresent(tourId, ratingDto.getCustomerId());
+                throw ex;
+            }
+            eventPublisher.publishEvent(TourRatingChangedEvent.created(tourId, ratingDto.getCustomerId(),
+                    ratingDto.getScore()));
+        }
+    }
+
+    /*
+     * Create many ratings for a tour in one request
+     * @param tourId and a List of RatingDto
+     * @return the outcome of every rating, in request order
+     * */
+    @PostMapping(path = "/bulk")
+    public List<BulkRatingResult> createTourRatings(@PathVariable(value = "tourId") int tourId,
+                                                    @RequestBody List<RatingDto> ratingDtos) {
+        Tour tour = verifyTour(tourId);
+        BulkRatingResult[] results = new BulkRatingResult[ratingDtos.size()];
+        Map<Integer, TourRating> candidates = new LinkedHashMap<>();
+        for (int i = 0; i < ratingDtos.size(); i++) {
+            RatingDto ratingDto = ratingDtos.get(i);
+            String invalid = validateForCreate(ratingDto);
+            if (invalid != null) {
+                results[i] = new BulkRatingResult(ratingDto == null ? null : ratingDto.getCustomerId(),
+                        BulkRatingResult.Status.INVALID, invalid);
+            } else if (candidates.containsKey(ratingDto.getCustomerId())) {
+                results[i] = new BulkRatingResult(ratingDto.getCustomerId(), BulkRatingResult.Status.ALREADY_EXISTS,
+                        "Duplicate customer id " + ratingDto.getCustomerId() + " in request");
+            } else {
+                candidates.put(ratingDto.getCustomerId(), new TourRating(new TourRatingPk(
+                        tour, ratingDto.getCustomerId()), ratingDto.getScore(), ratingDto.getComment()));
+            }
+        }
+
+        Set<Integer> created = tourRatingService.createMissing(tourId, new ArrayList<>(candidates.values()));
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != null) continue;
+            RatingDto ratingDto = ratingDtos.get(i);
+            if (created.contains(ratingDto.getCustomerId())) {
+                results[i] = new BulkRatingResult(ratingDto.getCustomerId(), BulkRatingResult.Status.CREATED, null);
+                eventPublisher.publishEvent(TourRatingChangedEvent.created(tourId, ratingDto.getCustomerId(),
+                        ratingDto.getScore()));
+            } else {
+                results[i] = new BulkRatingResult(ratingDto.getCustomerId(), BulkRatingResult.Status.ALREADY_EXISTS,
+                        "Customer Rating with customer id " + ratingDto.getCustomerId() + " for this tour already exists");
+            }
+        }
+        return Arrays.asList(results);
     }
 
     /*
@@ -81,10 +240,9 @@ public class TourRatingController {
      * */
     @PutMapping(path = "/updateRatingWithPut")
     public RatingDto updateWithPut(@PathVariable(value = "tourId") int tourId, @RequestBody @Validated RatingDto ratingDto) {
-        TourRating rating = verifyTourRating(tourId, ratingDto.getCustomerId());
-        rating.setScore(ratingDto.getScore());
-        rating.setComment(ratingDto.getComment());
-        return new RatingDto(tourRatingRepository.save(rating));
+        if (ratingDto.getScore() == null)
+            throw new IllegalArgumentException("score is required");
+        return update(tourId, ratingDto, false);
     }
 
     /*
@@ -94,19 +252,34 @@ public class TourRatingController {
     * */
     @PatchMapping(path = "/updateRatingWithPatch")
     public RatingDto updateWithPatch(@PathVariable(value = "tourId") int tourId, @RequestBody @Validated RatingDto ratingDto) {
-        TourRating rating = verifyTourRating(tourId, ratingDto.getCustomerId());
-        if(ratingDto.getScore() != null)
-            rating.setScore(ratingDto.getScore());
-        if(ratingDto.getComment() != null)
-            rating.setComment(ratingDto.getComment());
-        return new RatingDto(tourRatingRepository.save(rating));
+        return update(tourId, ratingDto, true);
+    }
+
+    /*
+     * Conditional update of a rating; with a version in the RatingDto the update fails with 409
+     * if the rating has changed since that version
+     * */
+    private RatingDto update(int tourId, RatingDto ratingDto, boolean partial) {
+        if (ratingDto.getCustomerId() == null)
+            throw new IllegalArgumentException("customerId is required");
+        String invalid = validateChanges(ratingDto);
+        if (invalid != null)
+            throw new IllegalArgumentException(invalid);
+        RatingUpdate update = tourRatingService.update(tourId, ratingDto.getCustomerId(), ratingDto.getScore(),
+                ratingDto.getComment(), ratingDto.getVersion(), partial);
+        eventPublisher.publishEvent(TourRatingChangedEvent.updated(tourId, update.getCustomerId(),
+                update.getOldScore(), update.getScore()));
+        return new RatingDto(update);
     }
 
     @DeleteMapping(path = "/delete/{customerId}")
     public void delete(@PathVariable(value = "tourId") int tourId,
                        @PathVariable(value = "customerId") int customerId) {
         TourRating rating = verifyTourRating(tourId, customerId);
-        tourRatingRepository.delete(rating);
+        if (!tourRatingService.delete(rating))
+            throw new NoSuchElementException("Tour-Rating pair for request("
+                    + tourId + " for customer" + customerId);
+        eventPublisher.publishEvent(TourRatingChangedEvent.deleted(tourId, customerId, rating.getScore()));
     }
 
     /*
@@ -127,25 +300,67 @@ public class TourRatingController {
      * @throws NoSuchElementException if no TourRating found
      * */
     private TourRating verifyTourRating(int tourId, int customerId) throws NoSuchElementException {
-        return tourRatingRepository.findByPkTourIdAndPkCustomerId(tourId, customerId).orElseThrow(() ->
+        return tourRatingService.find(tourId, customerId).orElseThrow(() ->
                 new NoSuchElementException("Tour-Rating pair for request("
                 + tourId + " for customer" + customerId));
     }
 
     private boolean verifyCustomerRatingNotPresent(int tourId, int customerId) throws KeyAlreadyExistsException {
-        boolean customerRatingExists = tourRatingRepository.findByPkTourIdAndPkCustomerId(tourId, customerId).isPresent();
+        boolean customerRatingExists = tourRatingService.exists(tourId, customerId);
         if(customerRatingExists) {
             throw new KeyAlreadyExistsException("Customer Rating with customer id " + customerId + " for this tour already exists");
         }
         return false;
     }
 
+    /*
+     * Check a RatingDto against the constraints of a new rating
+     * @return the reason it is invalid, null when it is valid
+     * */
+    private String validateForCreate(RatingDto ratingDto) {
+        if (ratingDto == null || ratingDto.getCustomerId() == null)
+            return "customerId is required";
+        if (ratingDto.getScore() == null)
+            return "score must be between 0 and 5";
+        return validateChanges(ratingDto);
+    }
+
+    /*
+     * Check the score and comment a RatingDto sets, either of which may be absent
+     * @return the reason it is invalid, null when it is valid
+     * */
+    private String validateChanges(RatingDto ratingDto) {
+        if (ratingDto.getScore() != null && (ratingDto.getScore() < 0 || ratingDto.getScore() > 5))
+            return "score must be between 0 and 5";
+        if (ratingDto.getComment() != null && ratingDto.getComment().length() > 255)
+            return "comment must be at most 255 characters";
+        return null;
+    }
+
     @ResponseStatus(HttpStatus.NOT_FOUND)
     @ExceptionHandler(NoSuchElementException.class)
     public String return400(NoSuchElementException ex) {
         return ex.getMessage();
     }
 
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(IllegalArgumentException.class)
+    public String returnBadRequest(IllegalArgumentException ex) {
+        return ex.getMessage();
+    }
+
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @ExceptionHandler(RejectedExecutionException.class)
+    public String return503(RejectedExecutionException ex) {
+        return ex.getMessage();
+    }
+
+    @ResponseStatus(HttpStatus.CONFLICT)
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public String return409(OptimisticLockingFailureException ex) {
+        return ex.getMessage();
+    }
+
     @ResponseStatus(HttpStatus.ALREADY_REPORTED)
     @ExceptionHandler(KeyAlreadyExistsException.class)
     public String return208(KeyAlreadyExistsException ex) {
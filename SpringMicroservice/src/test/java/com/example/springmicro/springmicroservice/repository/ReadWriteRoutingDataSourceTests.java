@@ -0,0 +1,155 @@
+package com.example.springmicro.springmicroservice.repository;
+
+import com.example.springmicro.springmicroservice.domain.Tour;
+import com.example.springmicro.springmicroservice.domain.TourRating;
+import com.example.springmicro.springmicroservice.domain.TourRatingPk;
+import com.example.springmicro.springmicroservice.service.TourRatingService;
+import com.example.springmicro.springmicroservice.web.ReadYourWritesFilter;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.servlet.http.Cookie;
+import javax.sql.DataSource;
+import java.sql.Connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/*
+ * The replica is a second pool on the same in-memory H2 database, logged in as a user that may only
+ * select, so it never lags and a write sent to it fails
+ */
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:routing;DB_CLOSE_DELAY=-1;" +
+				"INIT=CREATE USER IF NOT EXISTS REPLICA PASSWORD 'replica'\\\\;GRANT SELECT ON SCHEMA PUBLIC TO REPLICA",
+		"springmicroservice.datasource.replica.url=jdbc:h2:mem:routing",
+		"springmicroservice.datasource.replica.username=replica",
+		"springmicroservice.datasource.replica.password=replica",
+		"springmicroservice.datasource.replica.max-lag-ms=300"})
+@AutoConfigureMockMvc
+class ReadWriteRoutingDataSourceTests {
+	private static final int CUSTOMER_ID = 2_000_000;
+
+	@Autowired
+	private ReadWriteRoutingDataSource router;
+
+	@Autowired
+	private HikariDataSource primaryDataSource;
+
+	@Autowired
+	private TourRepository tourRepository;
+
+	@Autowired
+	private TourRatingRepository tourRatingRepository;
+
+	@Autowired
+	private TourRatingService tourRatingService;
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Test
+	void readOnlyTransactionsUseTheReplica() {
+		Tour tour = tourRepository.findAll().iterator().next();
+		long replica = router.getReplicaConnections();
+		tourRepository.findAll(PageRequest.of(0, 5));
+		assertEquals(replica + 1, router.getReplicaConnections());
+
+		// no client to read its writes: a write does not keep anyone else's reads off the replica
+		long primary = router.getPrimaryConnections();
+		tourRatingService.save(new TourRating(new TourRatingPk(tour, CUSTOMER_ID), 4, "routed"));
+		assertTrue(router.getPrimaryConnections() > primary);
+		assertEquals(4, tourRatingRepository.findSummaryByTourIdAndCustomerId(tour.getId(), CUSTOMER_ID)
+				.orElseThrow().getScore());
+		assertEquals(replica + 2, router.getReplicaConnections());
+	}
+
+	/*
+	 * The client that wrote reads from the primary until the lag has passed, other clients from the replica
+	 */
+	@Test
+	void aClientReadsItsWritesFromThePrimary() throws Exception {
+		Tour tour = tourRepository.findAll().iterator().next();
+		String ratings = "/tours/" + tour.getId() + "/ratings";
+		Cookie primaryUntil = mockMvc.perform(post(ratings + "/createTourRating")
+						.contentType(MediaType.APPLICATION_JSON).content("{\"score\":3,\"customerId\":" + (CUSTOMER_ID + 2) + "}"))
+				.andExpect(status().isCreated())
+				.andReturn().getResponse().getCookie(ReadYourWritesFilter.COOKIE);
+		assertNotNull(primaryUntil);
+
+		long replica = router.getReplicaConnections();
+		mockMvc.perform(get(ratings + "/getAllRating").cookie(primaryUntil)).andExpect(status().isOk());
+		assertEquals(replica, router.getReplicaConnections());
+		mockMvc.perform(get(ratings + "/getAllRating")).andExpect(status().isOk());
+		assertEquals(replica + 1, router.getReplicaConnections());
+
+		Thread.sleep(400);
+		mockMvc.perform(get(ratings + "/getAllRating").cookie(primaryUntil)).andExpect(status().isOk());
+		assertEquals(replica + 2, router.getReplicaConnections());
+	}
+
+	/*
+	 * Open-in-view keeps one EntityManager for the whole request: the insert must not reuse the
+	 * replica connection of the read-only existence check before it
+	 */
+	@Test
+	void aRequestThatReadsBeforeItWritesWritesToThePrimary() throws Exception {
+		Tour tour = tourRepository.findAll().iterator().next();
+		int customerId = CUSTOMER_ID + 1;
+		long replica = router.getReplicaConnections();
+		mockMvc.perform(post("/tours/" + tour.getId() + "/ratings/createTourRating")
+				.contentType(MediaType.APPLICATION_JSON).content("{\"score\":5,\"customerId\":" + customerId + "}"))
+				.andExpect(status().isCreated());
+		assertTrue(router.getReplicaConnections() > replica, "the existence check read from the replica");
+		assertEquals(5, tourRatingRepository.findSummaryByTourIdAndCustomerId(tour.getId(), customerId)
+				.orElseThrow().getScore());
+	}
+
+	@Test
+	void readsFallBackToThePrimaryWhileTheReplicaIsDown() {
+		DataSource down = new DriverManagerDataSource("jdbc:h2:tcp://localhost:1/down");
+		ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primaryDataSource, down, 0, 60_000);
+		LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy();
+		dataSource.setTargetDataSource(routing);
+		// known defaults, so the proxy does not open a connection to look them up
+		dataSource.setDefaultAutoCommit(true);
+		dataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+		dataSource.afterPropertiesSet();
+		TransactionTemplate readOnly = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		readOnly.setReadOnly(true);
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+		for (int i = 0; i < 2; i++) {
+			readOnly.executeWithoutResult(status -> jdbcTemplate.queryForObject("select count(*) from tour", Long.class));
+		}
+		assertEquals(1, routing.getFallbacks());
+		assertEquals(2, routing.getPrimaryConnections());
+		assertEquals(0, routing.getReplicaConnections());
+	}
+
+	@Test
+	void connectionsWithCredentialsAreRoutedToo() throws Exception {
+		DataSource primary = new DriverManagerDataSource("jdbc:h2:mem:routing;DB_CLOSE_DELAY=-1");
+		DataSource down = new DriverManagerDataSource("jdbc:h2:tcp://localhost:1/down");
+		ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, down, 0, 60_000);
+		try (Connection connection = routing.getConnection("sa", "")) {
+			assertTrue(connection.isValid(1));
+		}
+		assertEquals(1, routing.getPrimaryConnections());
+	}
+}
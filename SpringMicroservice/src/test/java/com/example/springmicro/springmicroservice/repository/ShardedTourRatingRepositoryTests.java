@@ -0,0 +1,115 @@
+package com.example.springmicro.springmicroservice.repository;
+
+import com.example.springmicro.springmicroservice.domain.Tour;
+import com.example.springmicro.springmicroservice.domain.TourRating;
+import com.example.springmicro.springmicroservice.domain.TourRatingPk;
+import com.example.springmicro.springmicroservice.service.TourRatingService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Three in-memory H2 databases stand in for the shards; each is also opened directly to see
+ * where the ratings were written
+ */
+@SpringBootTest(properties = {
+		"springmicroservice.ratings.shards=3",
+		"springmicroservice.ratings.shard-url=jdbc:h2:mem:sharding-tests-{shard};DB_CLOSE_DELAY=-1"})
+class ShardedTourRatingRepositoryTests {
+	private static final int SHARDS = 3;
+	private static final int CUSTOMER_ID = 3_000_000;
+
+	@Autowired
+	private ShardedTourRatingRepository shardedTourRatingRepository;
+
+	@Autowired
+	private TourRatingService tourRatingService;
+
+	@Autowired
+	private TourRepository tourRepository;
+
+	@Test
+	void ratingsOfATourLiveOnItsShardAndCustomerLookupsMergeAllShards() {
+		List<Tour> tours = new ArrayList<>();
+		tourRepository.findAll().forEach(tours::add);
+		for (Tour tour : tours) {
+			tourRatingService.createMissing(tour.getId(), List.of(
+					new TourRating(new TourRatingPk(tour, CUSTOMER_ID), tour.getId() % 6, null)));
+		}
+
+		int[] perShard = new int[SHARDS];
+		for (int shard = 0; shard < SHARDS; shard++) {
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(
+					new DriverManagerDataSource("jdbc:h2:mem:sharding-tests-" + shard, "sa", ""));
+			for (Integer tourId : jdbcTemplate.queryForList(
+					"select tour_id from tour_rating where customer_id = ?", Integer.class, CUSTOMER_ID)) {
+				assertEquals(shard, shardedTourRatingRepository.shardOf(tourId), "shard of tour " + tourId);
+				perShard[shard]++;
+			}
+		}
+		assertEquals(tours.size(), perShard[0] + perShard[1] + perShard[2]);
+		for (int count : perShard) {
+			assertTrue(count > 0, "every shard holds ratings");
+		}
+
+		// page through the customer's ratings across the shards, in tour order
+		List<CustomerRatingSummary> ratings = new ArrayList<>();
+		int afterTourId = Integer.MIN_VALUE;
+		List<CustomerRatingSummary> page;
+		do {
+			page = tourRatingService.findCustomerSummariesAfterTour(CUSTOMER_ID, afterTourId, 7);
+			ratings.addAll(page);
+			if (!page.isEmpty()) afterTourId = page.get(page.size() - 1).getTourId();
+		} while (page.size() == 7);
+		assertEquals(tours.size(), ratings.size());
+		for (int i = 0; i < ratings.size(); i++) {
+			CustomerRatingSummary rating = ratings.get(i);
+			if (i > 0) assertTrue(ratings.get(i - 1).getTourId() < rating.getTourId(), "tour order");
+			assertNotNull(rating.getTourTitle());
+			assertEquals(rating.getTourId() % 6, rating.getScore());
+		}
+
+		long counted = tourRatingService.countByTourAndScore().stream().mapToLong(TourScoreCount::getTotal).sum();
+		assertEquals(tours.size(), counted);
+	}
+
+	@Test
+	void singleTourOperationsStayOnTheShard() {
+		Tour tour = tourRepository.findAll().iterator().next();
+		int customerId = CUSTOMER_ID + 1;
+		tourRatingService.save(new TourRating(new TourRatingPk(tour, customerId), 2, "first"));
+		assertEquals(2, tourRatingService.find(tour.getId(), customerId).orElseThrow().getScore());
+
+		assertEquals(3, tourRatingService.update(tour.getId(), customerId, 3, null, 0, true).getScore());
+		RatingSummary stored = shardedTourRatingRepository.findSummary(tour.getId(), customerId).orElseThrow();
+		assertEquals(1, stored.getVersion());
+		assertEquals("first", stored.getComment());
+
+		tourRatingService.delete(tourRatingService.find(tour.getId(), customerId).orElseThrow());
+		assertTrue(tourRatingService.find(tour.getId(), customerId).isEmpty());
+	}
+
+	@Test
+	void aSecondCreateOfTheSameRatingFailsOnTheShard() {
+		Tour tour = tourRepository.findAll().iterator().next();
+		int customerId = CUSTOMER_ID + 2;
+		tourRatingService.save(new TourRating(new TourRatingPk(tour, customerId), 2, "first"));
+
+		assertThrows(DataIntegrityViolationException.class, () ->
+				tourRatingService.save(new TourRating(new TourRatingPk(tour, customerId), 5, "second")));
+		RatingSummary stored = shardedTourRatingRepository.findSummary(tour.getId(), customerId).orElseThrow();
+		assertEquals(2, stored.getScore());
+		assertEquals("first", stored.getComment());
+	}
+}
@@ -0,0 +1,105 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.TourRatingChangedEvent;
+import com.example.springmicro.springmicroservice.repository.TourScoreCount;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/*
+ * Rebuilds racing with rating changes, the grouped query held until the test lets it return
+ */
+class RatingAggregateServiceTests {
+	private final TourRatingService tourRatingService = mock(TourRatingService.class);
+	private final RatingAggregateService service = new RatingAggregateService(tourRatingService);
+
+	@Test
+	void changesDuringARebuildAreKeptAndReadersSeeThePreviousAggregates() throws Exception {
+		service.onRatingChanged(TourRatingChangedEvent.created(1, 100, 5));
+		service.onRatingChanged(TourRatingChangedEvent.created(2, 300, 1));
+		CountDownLatch querying = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		when(tourRatingService.countByTourAndScore()).thenAnswer(invocation -> {
+			querying.countDown();
+			assertTrue(release.await(10, TimeUnit.SECONDS));
+			return List.of(row(1, 4, 2L), row(2, 1, 1L));
+		});
+
+		CompletableFuture<Void> rebuild = CompletableFuture.runAsync(service::rebuild);
+		assertTrue(querying.await(10, TimeUnit.SECONDS));
+		assertEquals(1, service.get(1).orElseThrow().getCount());
+		service.onRatingChanged(TourRatingChangedEvent.created(1, 200, 3));
+		service.onRatingChanged(TourRatingChangedEvent.updated(2, 300, 1, 2));
+		assertEquals(2, service.get(1).orElseThrow().getCount());
+		release.countDown();
+		rebuild.get(10, TimeUnit.SECONDS);
+
+		assertEquals(3, service.get(1).orElseThrow().getCount());
+		assertEquals(11, service.get(1).orElseThrow().getSum());
+		assertEquals(1, service.get(2).orElseThrow().getCount());
+		assertEquals(2, service.get(2).orElseThrow().getSum());
+
+		service.onRatingChanged(TourRatingChangedEvent.deleted(1, 200, 3));
+		assertEquals(2, service.get(1).orElseThrow().getCount());
+	}
+
+	@Test
+	void aFailedRebuildKeepsTheAggregates() {
+		service.onRatingChanged(TourRatingChangedEvent.created(1, 100, 5));
+		when(tourRatingService.countByTourAndScore()).thenThrow(new IllegalStateException("database down"));
+
+		assertThrows(IllegalStateException.class, service::rebuild);
+		service.onRatingChanged(TourRatingChangedEvent.created(1, 200, 3));
+		assertEquals(2, service.get(1).orElseThrow().getCount());
+	}
+
+	@Test
+	void aChangeThatDoesNotFitTheAggregateRebuildsIt() throws Exception {
+		service.onRatingChanged(TourRatingChangedEvent.created(1, 100, 5));
+		CountDownLatch rebuilt = new CountDownLatch(1);
+		when(tourRatingService.countByTourAndScore()).thenAnswer(invocation -> {
+			rebuilt.countDown();
+			return List.of(row(1, 4, 2L));
+		});
+
+		service.onRatingChanged(TourRatingChangedEvent.deleted(1, 200, 3));
+		assertEquals(1, service.get(1).orElseThrow().getCount());
+		assertEquals(5, service.get(1).orElseThrow().getSum());
+
+		assertTrue(rebuilt.await(10, TimeUnit.SECONDS));
+		for (long deadline = System.currentTimeMillis() + 10_000;
+			 service.get(1).orElseThrow().getCount() != 2 && System.currentTimeMillis() < deadline; ) {
+			Thread.sleep(20);
+		}
+		assertEquals(2, service.get(1).orElseThrow().getCount());
+		assertEquals(8, service.get(1).orElseThrow().getSum());
+	}
+
+	private static TourScoreCount row(int tourId, int score, long total) {
+		return new TourScoreCount() {
+			@Override
+			public Integer getTourId() {
+				return tourId;
+			}
+
+			@Override
+			public Integer getScore() {
+				return score;
+			}
+
+			@Override
+			public Long getTotal() {
+				return total;
+			}
+		};
+	}
+}
@@ -0,0 +1,208 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.Difficulty;
+import com.example.springmicro.springmicroservice.domain.Region;
+import com.example.springmicro.springmicroservice.domain.Tour;
+import com.example.springmicro.springmicroservice.domain.TourRating;
+import com.example.springmicro.springmicroservice.domain.TourRatingChangedEvent;
+import com.example.springmicro.springmicroservice.domain.TourRatingPk;
+import com.example.springmicro.springmicroservice.domain.TourRatingsWrittenEvent;
+import com.example.springmicro.springmicroservice.repository.ShardedTourRatingRepository;
+import com.example.springmicro.springmicroservice.repository.TourRatingBatchRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/*
+ * The buffer against a batch repository that records every batch it is asked to write
+ */
+class RatingWriteBehindBufferTests {
+	private final List<List<TourRating>> batches = new ArrayList<>();
+	// customer id -> number of writes of its rating that fail
+	private final Map<Integer, AtomicInteger> failing = new HashMap<>();
+	private TourRatingBatchRepository batchRepository;
+	private ApplicationEventPublisher eventPublisher;
+	private SimpleMeterRegistry meterRegistry;
+	private Tour tour;
+
+	@BeforeEach
+	void recordBatches() {
+		batchRepository = mock(TourRatingBatchRepository.class);
+		doAnswer(invocation -> {
+			Collection<TourRating> ratings = invocation.getArgument(0);
+			for (TourRating rating : ratings) {
+				AtomicInteger failures = failing.get(rating.getPk().getCustomerId());
+				if (failures != null && failures.getAndDecrement() > 0) {
+					throw new DataIntegrityViolationException("rejected");
+				}
+			}
+			batches.add(List.copyOf(ratings));
+			return null;
+		}).when(batchRepository).upsertAll(anyCollection());
+		eventPublisher = mock(ApplicationEventPublisher.class);
+		meterRegistry = new SimpleMeterRegistry();
+		tour = new Tour("Big Sur Retreat", null, null, 750, null, null, null, null, Difficulty.Medium, Region.Central_Coast);
+		ReflectionTestUtils.setField(tour, "id", 7);
+	}
+
+	private RatingWriteBehindBuffer buffer(int capacity, int flushSize, long flushIntervalMillis) {
+		return buffer(capacity, flushSize, flushIntervalMillis, 60_000, 5);
+	}
+
+	private RatingWriteBehindBuffer buffer(int capacity, int flushSize, long flushIntervalMillis,
+										   long retryBackoffMillis, int maxAttempts) {
+		return new RatingWriteBehindBuffer(batchRepository, mock(ShardedTourRatingRepository.class), eventPublisher,
+				meterRegistry, true, capacity, flushSize, flushIntervalMillis, 50, retryBackoffMillis, maxAttempts);
+	}
+
+	private TourRating rating(int customerId, Integer score) {
+		return new TourRating(new TourRatingPk(tour, customerId), score, null);
+	}
+
+	@Test
+	void writesOfTheSameRatingCoalesce() {
+		RatingWriteBehindBuffer buffer = buffer(10, 10, 60_000);
+		buffer.put(rating(1, 2));
+		buffer.put(rating(2, 3));
+		buffer.put(rating(1, 5));
+		assertEquals(5, buffer.get(7, 1).orElseThrow().getScore());
+
+		buffer.flush();
+		assertEquals(1, batches.size());
+		assertEquals(2, batches.get(0).size());
+		assertEquals(5, batches.get(0).get(0).getScore());
+		assertTrue(buffer.get(7, 1).isEmpty());
+		ArgumentCaptor<Object> event = ArgumentCaptor.forClass(Object.class);
+		verify(eventPublisher).publishEvent(event.capture());
+		assertEquals(Set.of(7), ((TourRatingsWrittenEvent) event.getValue()).getTourIds());
+	}
+
+	@Test
+	void aFullBufferRejectsNewRatingsButTakesUpdatesOfPendingOnes() {
+		RatingWriteBehindBuffer buffer = buffer(2, 10, 60_000); // never started, so nothing flushes
+		buffer.put(rating(1, 1));
+		buffer.put(rating(2, 1));
+		assertThrows(RejectedExecutionException.class, () -> buffer.put(rating(3, 1)));
+		buffer.put(rating(2, 4));
+		assertEquals(4, buffer.get(7, 2).orElseThrow().getScore());
+	}
+
+	@Test
+	void ratingsWithoutScoreAreNotAccepted() {
+		RatingWriteBehindBuffer buffer = buffer(10, 10, 60_000);
+		assertThrows(IllegalArgumentException.class, () -> buffer.put(rating(1, null)));
+		assertTrue(buffer.get(7, 1).isEmpty());
+	}
+
+	@Test
+	void pendingRatingsAreFlushedOnStop() throws InterruptedException {
+		RatingWriteBehindBuffer buffer = buffer(100, 100, 60_000);
+		buffer.start();
+		for (int customerId = 0; customerId < 10; customerId++) {
+			buffer.put(rating(customerId, 3));
+		}
+		buffer.stop();
+		assertEquals(10, batches.stream().mapToInt(List::size).sum());
+	}
+
+	@Test
+	void aFailedBatchIsRetriedOneRatingAtATime() {
+		failing.put(2, new AtomicInteger(Integer.MAX_VALUE));
+		RatingWriteBehindBuffer buffer = buffer(10, 10, 60_000);
+		buffer.put(rating(1, 1));
+		buffer.put(rating(2, 2));
+		buffer.put(rating(3, 3));
+
+		buffer.flush();
+		assertEquals(2, batches.size());
+		assertEquals(1, batches.get(0).get(0).getPk().getCustomerId());
+		assertEquals(3, batches.get(1).get(0).getPk().getCustomerId());
+		// kept for a retry that is not due yet
+		assertEquals(2, buffer.get(7, 2).orElseThrow().getScore());
+		buffer.flush();
+		assertEquals(2, batches.size());
+	}
+
+	@Test
+	void aFailedRatingIsRetriedUntilItIsWritten() {
+		// the batch and the rating on its own in the first flush, then alone in the second
+		failing.put(2, new AtomicInteger(3));
+		RatingWriteBehindBuffer buffer = buffer(10, 10, 60_000, 0, 5);
+		buffer.put(rating(1, 1));
+		buffer.put(rating(2, 2));
+
+		buffer.flush();
+		buffer.flush();
+		assertTrue(buffer.get(7, 2).isPresent());
+		buffer.flush();
+
+		assertTrue(buffer.get(7, 2).isEmpty());
+		assertEquals(List.of(1, 2), batches.stream().flatMap(List::stream)
+				.map(rating -> rating.getPk().getCustomerId()).collect(Collectors.toList()));
+		assertEquals(2, meterRegistry.counter("ratings.write-behind.retried").count());
+		assertEquals(0, meterRegistry.counter("ratings.write-behind.dropped").count());
+	}
+
+	@Test
+	void aNewerWriteReplacesAFailedOne() {
+		failing.put(2, new AtomicInteger(1));
+		RatingWriteBehindBuffer buffer = buffer(10, 10, 60_000);
+		buffer.put(rating(2, 2));
+		buffer.flush();
+		buffer.put(rating(2, 4));
+
+		buffer.flush();
+		assertTrue(buffer.get(7, 2).isEmpty());
+		assertEquals(4, batches.get(0).get(0).getScore());
+	}
+
+	@Test
+	void aRatingThatKeepsFailingIsDroppedAndItsChangeTakenBack() {
+		failing.put(2, new AtomicInteger(Integer.MAX_VALUE));
+		failing.put(3, new AtomicInteger(Integer.MAX_VALUE));
+		when(batchRepository.findScore(7, 2)).thenReturn(Optional.of(1));
+		RatingWriteBehindBuffer buffer = buffer(10, 10, 60_000, 0, 2);
+		buffer.put(rating(2, 5));
+		buffer.put(rating(3, 4));
+
+		buffer.flush();
+		buffer.flush();
+		buffer.flush();
+
+		assertTrue(buffer.get(7, 2).isEmpty());
+		assertTrue(buffer.get(7, 3).isEmpty());
+		assertEquals(2, meterRegistry.counter("ratings.write-behind.dropped").count());
+		ArgumentCaptor<Object> events = ArgumentCaptor.forClass(Object.class);
+		verify(eventPublisher, atLeastOnce()).publishEvent(events.capture());
+		List<String> changes = events.getAllValues().stream().filter(TourRatingChangedEvent.class::isInstance)
+				.map(TourRatingChangedEvent.class::cast)
+				.map(event -> event.getType() + " " + event.getCustomerId() + " " + event.getOldScore() + " " + event.getNewScore())
+				.collect(Collectors.toList());
+		assertEquals(List.of("UPDATED 2 5 1", "DELETED 3 4 null"), changes);
+	}
+}
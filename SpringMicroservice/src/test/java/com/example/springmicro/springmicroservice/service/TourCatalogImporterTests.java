@@ -0,0 +1,90 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.Tour;
+import com.example.springmicro.springmicroservice.repository.TourRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Catalogs imported in batches of two, next to the tours the application imported at startup
+ */
+@SpringBootTest(properties = "springmicroservice.import.batch-size=2")
+class TourCatalogImporterTests {
+
+	@Autowired
+	private TourCatalogImporter tourCatalogImporter;
+
+	@Autowired
+	private TourRepository tourRepository;
+
+	@Test
+	void everyBatchIsWrittenAndBadToursAreRejected() throws Exception {
+		String catalog = "[" + String.join(",",
+				tour("Streamed A", "Backpack Cal", "Easy", "100"),
+				tour("Streamed B", "Nature Watch", "Medium", "200"),
+				tour("Streamed C", "No Such Package", "Easy", "300"),
+				tour("Streamed D", "Cycle California", "Impossible", "400"),
+				tour("Streamed E", "Kids California", "Difficult", "500")) + "]";
+
+		TourImportReport report = tourCatalogImporter.importStream("streamed", stream(catalog));
+
+		assertEquals(3, report.getCreated());
+		assertEquals(0, report.getUpdated());
+		assertEquals(2, report.getRejected());
+		assertEquals(List.of("Streamed A", "Streamed B", "Streamed E"), storedTitles("Streamed A", "Streamed B",
+				"Streamed C", "Streamed D", "Streamed E"));
+	}
+
+	@Test
+	void anUnchangedFileIsSkippedAndAChangedOneOnlyUpdatesItsChangedTours(@TempDir Path dir) throws Exception {
+		Path file = dir.resolve("catalog.json");
+		Files.writeString(file, "[" + tour("Filed A", "Backpack Cal", "Easy", "100") + ","
+				+ tour("Filed B", "Nature Watch", "Medium", "200") + "]");
+
+		TourImportReport first = tourCatalogImporter.importFile(file.toString());
+		assertFalse(first.isSkipped());
+		assertEquals(2, first.getCreated());
+
+		TourImportReport again = tourCatalogImporter.importFile(file.toString());
+		assertTrue(again.isSkipped());
+		assertEquals(0, again.getImported());
+
+		Files.writeString(file, "[" + tour("Filed A", "Backpack Cal", "Easy", "100") + ","
+				+ tour("Filed B", "Nature Watch", "Medium", "250") + "]");
+		TourImportReport changed = tourCatalogImporter.importFile(file.toString());
+		assertFalse(changed.isSkipped());
+		assertEquals(0, changed.getCreated());
+		assertEquals(1, changed.getUpdated());
+		assertEquals(1, changed.getUnchanged());
+		assertEquals(250, tourRepository.findWithTextByTitleIn(List.of("Filed B")).get(0).getPrice());
+	}
+
+	static String tour(String title, String packageType, String difficulty, String price) {
+		return "{\"packageType\":\"" + packageType + "\",\"title\":\"" + title + "\",\"blurb\":\"blurb\","
+				+ "\"description\":\"description\",\"bullets\":\"bullets\",\"difficulty\":\"" + difficulty + "\","
+				+ "\"length\":\"2 days\",\"price\":\"" + price + "\",\"region\":\"Central Coast\","
+				+ "\"keywords\":\"Hiking\"}";
+	}
+
+	private static ByteArrayInputStream stream(String catalog) {
+		return new ByteArrayInputStream(catalog.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private List<String> storedTitles(String... titles) {
+		return tourRepository.findWithTextByTitleIn(List.of(titles)).stream().map(Tour::getTitle).sorted()
+				.collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,70 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.repository.TourRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static com.example.springmicro.springmicroservice.service.TourCatalogImporterTests.tour;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Catalogs dropped into a watched directory while the application runs, and the import meters they move
+ */
+@SpringBootTest(properties = "springmicroservice.import.settle-ms=100")
+class TourCatalogWatcherTests {
+	private static Path watchDir;
+
+	@Autowired
+	private TourRepository tourRepository;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@DynamicPropertySource
+	static void watchATemporaryDirectory(DynamicPropertyRegistry registry) throws IOException {
+		watchDir = Files.createTempDirectory("catalogs");
+		registry.add("springmicroservice.import.watch-dir", watchDir::toString);
+	}
+
+	@Test
+	void aDroppedCatalogIsImportedAndCounted() throws Exception {
+		double files = count("tours.import.files", "outcome", "imported");
+		double created = count("tours.import.tours", "result", "created");
+		double rejected = count("tours.import.tours", "result", "rejected");
+
+		Path partial = watchDir.resolve("dropped.json.part");
+		Files.writeString(partial, "[" + tour("Dropped A", "Backpack Cal", "Easy", "100") + ","
+				+ tour("Dropped B", "Nature Watch", "Medium", "200") + ","
+				+ tour("Dropped C", "No Such Package", "Easy", "300") + "]");
+		Files.move(partial, watchDir.resolve("dropped.json"));
+
+		awaitUntil(() -> count("tours.import.files", "outcome", "imported") == files + 1);
+		assertEquals(created + 2, count("tours.import.tours", "result", "created"));
+		assertEquals(rejected + 1, count("tours.import.tours", "result", "rejected"));
+		assertEquals(2, tourRepository.findWithTextByTitleIn(List.of("Dropped A", "Dropped B", "Dropped C")).size());
+		assertTrue(meterRegistry.get("tours.import.duration").tag("outcome", "imported").timer().count() > 0);
+	}
+
+	private double count(String name, String tag, String value) {
+		return meterRegistry.counter(name, tag, value).count();
+	}
+
+	private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+		for (long deadline = System.currentTimeMillis() + 10_000;
+			 !condition.getAsBoolean() && System.currentTimeMillis() < deadline; ) {
+			Thread.sleep(20);
+		}
+		assertTrue(condition.getAsBoolean(), "condition not met in time");
+	}
+}
@@ -0,0 +1,76 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.Difficulty;
+import com.example.springmicro.springmicroservice.domain.Region;
+import com.example.springmicro.springmicroservice.domain.Tour;
+import com.example.springmicro.springmicroservice.domain.TourChangedEvent;
+import com.example.springmicro.springmicroservice.repository.TourRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/*
+ * The facet index rebuilt from a repository whose first page is held until the test lets it return
+ */
+class TourFacetIndexTests {
+	private final TourRepository tourRepository = mock(TourRepository.class);
+	private final TourFacetIndex index = new TourFacetIndex(tourRepository, new int[]{500, 1000, 2000});
+
+	@Test
+	void toursChangedDuringARebuildAreCounted() throws Exception {
+		Tour stale = tour(1, 750, Difficulty.Easy);
+		when(tourRepository.findByIdGreaterThanOrderByIdAsc(eq(1), any(Pageable.class))).thenReturn(List.of());
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		when(tourRepository.findByIdGreaterThanOrderByIdAsc(eq(Integer.MIN_VALUE), any(Pageable.class)))
+				.thenAnswer(invocation -> {
+					reading.countDown();
+					assertTrue(release.await(10, TimeUnit.SECONDS));
+					return List.of(stale);
+				});
+
+		CompletableFuture<Void> rebuild = CompletableFuture.runAsync(index::rebuild);
+		assertTrue(reading.await(10, TimeUnit.SECONDS));
+		index.onToursChanged(new TourChangedEvent(List.of(tour(1, 2500, Difficulty.Difficult),
+				tour(2, 100, Difficulty.Easy))));
+		release.countDown();
+		rebuild.get(10, TimeUnit.SECONDS);
+
+		FacetResult result = index.filter(Map.of(), 10);
+		assertEquals(2, result.getTotal());
+		assertEquals(1, result.getCounts().get("difficulty").get("Difficult"));
+		assertEquals(1, result.getCounts().get("difficulty").get("Easy"));
+		assertEquals(1, result.getCounts().get("price").get("2000+"));
+		assertEquals(0, result.getCounts().get("price").get("500-999"));
+	}
+
+	@Test
+	void aTourMovesBetweenFacetValuesWhenItChanges() {
+		index.onToursChanged(new TourChangedEvent(List.of(tour(1, 750, Difficulty.Easy))));
+		index.onToursChanged(new TourChangedEvent(List.of(tour(1, 750, Difficulty.Medium))));
+
+		FacetResult result = index.filter(Map.of(TourFacetIndex.Facet.DIFFICULTY, List.of("Easy")), 10);
+		assertEquals(0, result.getTotal());
+		assertEquals(1, result.getCounts().get("difficulty").get("Medium"));
+	}
+
+	private static Tour tour(int id, int price, Difficulty difficulty) {
+		Tour tour = new Tour("Tour " + id, null, null, price, null, null, null, null, difficulty,
+				Region.Central_Coast);
+		ReflectionTestUtils.setField(tour, "id", id);
+		return tour;
+	}
+}
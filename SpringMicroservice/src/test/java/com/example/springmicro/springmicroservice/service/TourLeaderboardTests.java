@@ -0,0 +1,87 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.TourRatingChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/*
+ * The leaderboard over aggregates kept by the test, rebuilt while ratings change
+ */
+class TourLeaderboardTests {
+	private final Map<Integer, RatingAggregate> aggregates = new ConcurrentHashMap<>();
+	private final RatingAggregateService ratingAggregateService = mock(RatingAggregateService.class);
+	private final TourLeaderboard leaderboard = new TourLeaderboard(ratingAggregateService);
+
+	@BeforeEach
+	void serveTheAggregates() {
+		when(ratingAggregateService.get(anyInt()))
+				.thenAnswer(invocation -> Optional.ofNullable(aggregates.get(invocation.<Integer>getArgument(0))));
+		doAnswer(invocation -> {
+			aggregates.forEach(invocation.<BiConsumer<Integer, RatingAggregate>>getArgument(0));
+			return null;
+		}).when(ratingAggregateService).forEach(any());
+		aggregates.put(1, RatingAggregate.EMPTY.plus(4, 1));
+		aggregates.put(2, RatingAggregate.EMPTY.plus(3, 1));
+	}
+
+	@Test
+	void changesDuringARebuildAreRankedAndReadersSeeThePreviousRanking() throws Exception {
+		leaderboard.rebuild();
+		assertEquals(List.of(1, 2), topTourIds());
+
+		Map<Integer, RatingAggregate> snapshot = Map.copyOf(aggregates);
+		CountDownLatch ranking = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			ranking.countDown();
+			assertTrue(release.await(10, TimeUnit.SECONDS));
+			snapshot.forEach(invocation.<BiConsumer<Integer, RatingAggregate>>getArgument(0));
+			return null;
+		}).when(ratingAggregateService).forEach(any());
+
+		CompletableFuture<Void> rebuild = CompletableFuture.runAsync(leaderboard::rebuild);
+		assertTrue(ranking.await(10, TimeUnit.SECONDS));
+		change(TourRatingChangedEvent.created(3, 100, 5), RatingAggregate.EMPTY.plus(5, 1));
+		change(TourRatingChangedEvent.updated(1, 100, 4, 1), RatingAggregate.EMPTY.plus(1, 1));
+		assertEquals(List.of(3, 2, 1), topTourIds());
+		release.countDown();
+		rebuild.get(10, TimeUnit.SECONDS);
+
+		assertEquals(List.of(3, 2, 1), topTourIds());
+	}
+
+	@Test
+	void toursWithoutRatingsAreNotRanked() {
+		leaderboard.rebuild();
+		aggregates.remove(1);
+		leaderboard.onRatingChanged(TourRatingChangedEvent.deleted(1, 100, 4));
+		assertEquals(List.of(2), topTourIds());
+	}
+
+	private void change(TourRatingChangedEvent event, RatingAggregate aggregate) {
+		aggregates.put(event.getTourId(), aggregate);
+		leaderboard.onRatingChanged(event);
+	}
+
+	private List<Integer> topTourIds() {
+		return leaderboard.top(10).stream().map(TourRanking::getTourId).collect(Collectors.toList());
+	}
+}
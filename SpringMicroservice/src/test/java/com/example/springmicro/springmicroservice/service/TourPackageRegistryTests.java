@@ -0,0 +1,66 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.TourPackage;
+import com.example.springmicro.springmicroservice.domain.TourPackageChangedEvent;
+import com.example.springmicro.springmicroservice.repository.TourPackageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/*
+ * The registry over a mocked repository, with package changes published straight back to it
+ */
+class TourPackageRegistryTests {
+	private final TourPackageRepository tourPackageRepository = mock(TourPackageRepository.class);
+	private final TourPackageRegistry registry = new TourPackageRegistry(tourPackageRepository);
+	private final ApplicationEventPublisher eventPublisher =
+			event -> registry.onTourPackageChanged((TourPackageChangedEvent) event);
+	private final TourPackageService tourPackageService =
+			new TourPackageService(tourPackageRepository, registry, eventPublisher);
+
+	@BeforeEach
+	void loadTwoPackages() {
+		when(tourPackageRepository.findAll()).thenReturn(List.of(new TourPackage("BC", "Backpack Cal"),
+				new TourPackage("CC", "California Calm")));
+		when(tourPackageRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+		registry.load();
+	}
+
+	@Test
+	void packagesAreFoundByCodeAndByNameWithoutQueryingAgain() {
+		assertEquals("Backpack Cal", registry.findByCode("BC").orElseThrow().getName());
+		assertEquals("CC", registry.findByName("California Calm").orElseThrow().getCode());
+		assertTrue(registry.findByCode("KC").isEmpty());
+		assertTrue(registry.findByName("BC").isEmpty());
+		assertEquals(2, registry.all().size());
+		verify(tourPackageRepository, times(1)).findAll();
+	}
+
+	@Test
+	void anExistingPackageIsNotSavedAgain() {
+		assertSame(registry.findByCode("BC").orElseThrow(), tourPackageService.createTourPackage("BC", "Backpack Cal"));
+		verify(tourPackageRepository, never()).save(any());
+	}
+
+	@Test
+	void aCreatedPackageIsFoundByCodeAndByName() {
+		TourPackage created = tourPackageService.createTourPackage("KC", "Kids California");
+
+		assertSame(created, registry.findByCode("KC").orElseThrow());
+		assertSame(created, registry.findByName("Kids California").orElseThrow());
+		assertEquals(3, tourPackageService.total());
+		verify(tourPackageRepository, times(1)).save(any());
+	}
+}
@@ -0,0 +1,124 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.Tour;
+import com.example.springmicro.springmicroservice.domain.TourRating;
+import com.example.springmicro.springmicroservice.domain.TourRatingPk;
+import com.example.springmicro.springmicroservice.repository.TourRatingBatchRepository;
+import com.example.springmicro.springmicroservice.repository.TourRatingRepository;
+import com.example.springmicro.springmicroservice.repository.TourRepository;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class TourRatingServiceTests {
+	private static final Logger log = LoggerFactory.getLogger(TourRatingServiceTests.class);
+	private static final int THREADS = 8;
+	private static final int UPDATES_PER_THREAD = 50;
+	private static final int CUSTOMER_ID = 1_000_000;
+
+	@Autowired
+	private TourRatingService tourRatingService;
+
+	@Autowired
+	private TourRepository tourRepository;
+
+	@Autowired
+	private TourRatingRepository tourRatingRepository;
+
+	@Autowired
+	private TourRatingBatchRepository tourRatingBatchRepository;
+
+	/*
+	 * Every thread updates the same rating with the version it last read and retries on a conflict,
+	 * as a client receiving 409 would; no update may be lost, so the final version counts them all
+	 */
+	@Test
+	void contendedVersionedUpdatesAreNeverLost() throws Exception {
+		Tour tour = tourRepository.findAll().iterator().next();
+		int tourId = tour.getId();
+		tourRatingBatchRepository.insertAll(List.of(new TourRating(new TourRatingPk(tour, CUSTOMER_ID), 0, null)));
+
+		AtomicInteger conflicts = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		long start = System.nanoTime();
+		try {
+			List<Future<?>> threads = new ArrayList<>();
+			for (int t = 0; t < THREADS; t++) {
+				int thread = t;
+				threads.add(pool.submit(() -> {
+					for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+						while (true) {
+							int version = tourRatingRepository.findSummaryByTourIdAndCustomerId(tourId, CUSTOMER_ID)
+									.orElseThrow().getVersion();
+							try {
+								tourRatingService.update(tourId, CUSTOMER_ID, i % 6, "thread " + thread, version, true);
+								break;
+							} catch (OptimisticLockingFailureException ex) {
+								conflicts.incrementAndGet();
+							}
+						}
+					}
+				}));
+			}
+			for (Future<?> thread : threads) {
+				thread.get();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		long elapsedNanos = System.nanoTime() - start;
+
+		int updates = THREADS * UPDATES_PER_THREAD;
+		assertEquals(updates, tourRatingRepository.findSummaryByTourIdAndCustomerId(tourId, CUSTOMER_ID)
+				.orElseThrow().getVersion());
+		log.info("{} contended rating updates by {} threads: {} updates/s, {} conflicts retried",
+				updates, THREADS, String.format("%.0f", updates * 1e9 / elapsedNanos), conflicts.get());
+	}
+
+	/*
+	 * Every thread deletes the same rating, as concurrent DELETE requests that all found it would;
+	 * only one of them may report the rating deleted
+	 */
+	@Test
+	void onlyOneOfConcurrentDeletesDeletesTheRating() throws Exception {
+		Tour tour = tourRepository.findAll().iterator().next();
+		TourRating rating = new TourRating(new TourRatingPk(tour, CUSTOMER_ID + 1), 3, null);
+		tourRatingBatchRepository.insertAll(List.of(rating));
+
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<Boolean>> deletes = new ArrayList<>();
+			for (int t = 0; t < THREADS; t++) {
+				deletes.add(pool.submit(() -> {
+					start.await();
+					return tourRatingService.delete(rating);
+				}));
+			}
+			start.countDown();
+			int deleted = 0;
+			for (Future<Boolean> delete : deletes) {
+				if (delete.get()) deleted++;
+			}
+			assertEquals(1, deleted);
+		} finally {
+			pool.shutdown();
+		}
+		assertTrue(tourRatingService.find(tour.getId(), CUSTOMER_ID + 1).isEmpty());
+	}
+}
@@ -0,0 +1,72 @@
+package com.example.springmicro.springmicroservice.service;
+
+import com.example.springmicro.springmicroservice.domain.Difficulty;
+import com.example.springmicro.springmicroservice.domain.Region;
+import com.example.springmicro.springmicroservice.domain.Tour;
+import com.example.springmicro.springmicroservice.domain.TourChangedEvent;
+import com.example.springmicro.springmicroservice.repository.TourRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/*
+ * The search index rebuilt from a repository whose first page is held until the test lets it return
+ */
+class TourSearchIndexTests {
+	private final TourRepository tourRepository = mock(TourRepository.class);
+	private final TourSearchIndex index = new TourSearchIndex(tourRepository);
+
+	@Test
+	void toursChangedDuringARebuildAreSearchable() throws Exception {
+		Tour stale = tour(1, "Big Sur Retreat", "hiking");
+		when(tourRepository.findWithTextByIdGreaterThan(eq(1), any(Pageable.class))).thenReturn(List.of());
+		when(tourRepository.findWithTextByIdGreaterThan(eq(Integer.MIN_VALUE), any(Pageable.class)))
+				.thenReturn(List.of(stale));
+		index.rebuild();
+		assertEquals(List.of(1), hits("retreat"));
+
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		when(tourRepository.findWithTextByIdGreaterThan(eq(Integer.MIN_VALUE), any(Pageable.class)))
+				.thenAnswer(invocation -> {
+					reading.countDown();
+					assertTrue(release.await(10, TimeUnit.SECONDS));
+					return List.of(stale);
+				});
+		CompletableFuture<Void> rebuild = CompletableFuture.runAsync(index::rebuild);
+		assertTrue(reading.await(10, TimeUnit.SECONDS));
+		index.onToursChanged(new TourChangedEvent(List.of(tour(1, "Monterey Whale Watch", "ocean"),
+				tour(2, "Death Valley Camping", "desert"))));
+		assertEquals(List.of(1), hits("whale"));
+		release.countDown();
+		rebuild.get(10, TimeUnit.SECONDS);
+
+		assertEquals(List.of(1), hits("whale"));
+		assertEquals(List.of(2), hits("desert"));
+		assertEquals(List.of(), hits("retreat"));
+	}
+
+	private List<Integer> hits(String query) {
+		return index.search(query, 10).stream().map(TourSearchHit::getId).collect(Collectors.toList());
+	}
+
+	static Tour tour(int id, String title, String keywords) {
+		Tour tour = new Tour(title, null, null, 750, null, null, keywords, null, Difficulty.Medium,
+				Region.Central_Coast);
+		ReflectionTestUtils.setField(tour, "id", id);
+		return tour;
+	}
+}
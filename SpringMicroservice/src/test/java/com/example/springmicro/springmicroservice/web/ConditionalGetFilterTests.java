@@ -0,0 +1,181 @@
+package com.example.springmicro.springmicroservice.web;
+
+import com.example.springmicro.springmicroservice.domain.TourChangedEvent;
+import com.example.springmicro.springmicroservice.domain.TourPackage;
+import com.example.springmicro.springmicroservice.domain.TourPackageChangedEvent;
+import com.example.springmicro.springmicroservice.domain.TourRatingChangedEvent;
+import com.example.springmicro.springmicroservice.domain.TourRatingsWrittenEvent;
+import com.example.springmicro.springmicroservice.service.ResourceVersions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * The filter in front of a handler that writes a body, with the versions bumped by the events directly
+ */
+class ConditionalGetFilterTests {
+	private final ResourceVersions resourceVersions = new ResourceVersions();
+	private final ConditionalGetFilter filter = new ConditionalGetFilter(resourceVersions);
+
+	@Test
+	void aMatchingEtagIsAnsweredWithoutTheHandler() throws Exception {
+		String etag = get("/tours/1/ratings/getAllRating", null, null).getHeader(HttpHeaders.ETAG);
+		assertNotNull(etag);
+
+		MockHttpServletResponse notModified = get("/tours/1/ratings/getAllRating", null, "\"other\", " + etag);
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, notModified.getStatus());
+		assertEquals(etag, notModified.getHeader(HttpHeaders.ETAG));
+		assertEquals("", notModified.getContentAsString());
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, get("/tours/1/ratings/average", null, "*").getStatus());
+	}
+
+	@Test
+	void aRatingChangesTheEtagsOfItsTourAndOfTheAllRatingsResourcesOnly() throws Exception {
+		String tour1 = etag("/tours/1/ratings/getAllRating");
+		String tour2 = etag("/tours/2/ratings/getAllRating");
+		String top = etag("/tours/top");
+		String histograms = etag("/tours/histograms");
+		String tours = etag("/tours/getAllTourByCursor");
+		String packages = etag("/packages");
+
+		resourceVersions.onRatingChanged(TourRatingChangedEvent.created(1, 7, 4));
+
+		assertNotEquals(tour1, etag("/tours/1/ratings/getAllRating"));
+		assertEquals(tour2, etag("/tours/2/ratings/getAllRating"));
+		assertNotEquals(top, etag("/tours/top"));
+		assertNotEquals(histograms, etag("/tours/histograms"));
+		assertEquals(tours, etag("/tours/getAllTourByCursor"));
+		assertEquals(packages, etag("/packages"));
+		assertEquals(HttpServletResponse.SC_OK, get("/tours/1/ratings/getAllRating", null, tour1).getStatus());
+	}
+
+	@Test
+	void bufferedRatingsChangeTheEtagOfTheirTourWhenWritten() throws Exception {
+		String tour1 = etag("/tours/1/ratings/getAllRating");
+		String top = etag("/tours/top");
+
+		resourceVersions.onRatingsWritten(new TourRatingsWrittenEvent(Set.of(1)));
+
+		assertNotEquals(tour1, etag("/tours/1/ratings/getAllRating"));
+		assertEquals(top, etag("/tours/top"));
+	}
+
+	@Test
+	void toursAndPackagesHaveTheirOwnVersions() throws Exception {
+		String tours = etag("/tours");
+		String tour = etag("/tours/1");
+		String ratings = etag("/tours/1/ratings/getAllRating");
+		String packages = etag("/packages");
+
+		resourceVersions.onToursChanged(new TourChangedEvent(List.of()));
+		assertNotEquals(tours, etag("/tours"));
+		assertNotEquals(tour, etag("/tours/1"));
+		// rating listings embed the tour
+		assertNotEquals(ratings, etag("/tours/1/ratings/getAllRating"));
+		assertEquals(packages, etag("/packages"));
+
+		tours = etag("/tours");
+		resourceVersions.onTourPackageChanged(new TourPackageChangedEvent(new TourPackage("KC", "Kids California")));
+		assertNotEquals(packages, etag("/packages"));
+		// tours embed their package
+		assertNotEquals(tours, etag("/tours"));
+	}
+
+	@Test
+	void representationsForAnotherAcceptHaveAnotherEtag() throws Exception {
+		String json = get("/tours/1/ratings/getAllRating", "application/json", null).getHeader(HttpHeaders.ETAG);
+		String ndjson = get("/tours/1/ratings/getAllRating", "application/x-ndjson", null).getHeader(HttpHeaders.ETAG);
+		assertNotEquals(json, ndjson);
+		assertEquals(HttpServletResponse.SC_OK, get("/tours/1/ratings/getAllRating", "application/x-ndjson", json).getStatus());
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED,
+				get("/tours/1/ratings/getAllRating", "application/x-ndjson", ndjson).getStatus());
+	}
+
+	@Test
+	void eventStreamsWritesAndOtherPathsAreLeftAlone() throws Exception {
+		MockHttpServletResponse events = get("/tours/1/ratings/events", "text/event-stream", "*");
+		assertEquals(HttpServletResponse.SC_OK, events.getStatus());
+		assertNull(events.getHeader(HttpHeaders.ETAG));
+
+		MockHttpServletResponse other = get("/actuator/health", null, "*");
+		assertEquals(HttpServletResponse.SC_OK, other.getStatus());
+		assertNull(other.getHeader(HttpHeaders.ETAG));
+
+		MockHttpServletRequest post = new MockHttpServletRequest("POST", "/tours/1/ratings/createTourRating");
+		post.addHeader(HttpHeaders.IF_NONE_MATCH, "*");
+		MockHttpServletResponse created = new MockHttpServletResponse();
+		filter.doFilter(post, created, new MockFilterChain(new WritingServlet()));
+		assertEquals(HttpServletResponse.SC_OK, created.getStatus());
+		assertNull(created.getHeader(HttpHeaders.ETAG));
+	}
+
+	@Test
+	void anyEtagOnlyMatchesAResourceThatExists() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/tours/99/ratings/average");
+		request.addHeader(HttpHeaders.IF_NONE_MATCH, "*");
+		MockHttpServletResponse missing = new MockHttpServletResponse();
+		filter.doFilter(request, missing, new MockFilterChain(new NotFoundServlet()));
+		assertEquals(HttpServletResponse.SC_NOT_FOUND, missing.getStatus());
+		assertEquals("Tour not found 99", missing.getContentAsString());
+		assertNull(missing.getHeader(HttpHeaders.ETAG));
+
+		MockHttpServletResponse existing = get("/tours/1/ratings/average", null, "*");
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, existing.getStatus());
+		assertEquals("", existing.getContentAsString());
+		assertNotNull(existing.getHeader(HttpHeaders.ETAG));
+	}
+
+	@Test
+	void failedResponsesGetNoEtag() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/tours/99/ratings/average");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, new MockFilterChain(new NotFoundServlet()));
+		assertEquals(HttpServletResponse.SC_NOT_FOUND, response.getStatus());
+		assertNull(response.getHeader(HttpHeaders.ETAG));
+	}
+
+	private String etag(String path) throws Exception {
+		String etag = get(path, null, null).getHeader(HttpHeaders.ETAG);
+		assertTrue(etag != null && etag.startsWith("\"") && etag.endsWith("\""), path + " " + etag);
+		return etag;
+	}
+
+	private MockHttpServletResponse get(String path, String accept, String ifNoneMatch) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+		if (accept != null) request.addHeader(HttpHeaders.ACCEPT, accept);
+		if (ifNoneMatch != null) request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, new MockFilterChain(new WritingServlet()));
+		return response;
+	}
+
+	private static class WritingServlet extends HttpServlet {
+		@Override
+		protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+			resp.getWriter().write("[]");
+		}
+	}
+
+	private static class NotFoundServlet extends HttpServlet {
+		@Override
+		protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+			resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+			resp.getWriter().write("Tour not found 99");
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package com.example.springmicro.springmicroservice.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CursorPageTests {
+
+	@Test
+	void theCursorHoldsTheKeyOfTheLastRowWhenThereIsAnotherPage() {
+		CursorPage<Integer> page = CursorPage.of(List.of(3, 5, 8), 2, Function.identity(), row -> new int[]{7, row});
+		assertEquals(List.of(3, 5), page.getContent());
+		assertArrayEquals(new int[]{7, 5}, CursorPage.decode(page.getNextCursor(), 2));
+
+		CursorPage<Integer> last = CursorPage.of(List.of(13), 2, Function.identity(), row -> new int[]{7, row});
+		assertEquals(List.of(13), last.getContent());
+		assertNull(last.getNextCursor());
+	}
+
+	@Test
+	void cursorsRoundTripNegativeKeys() {
+		assertArrayEquals(new int[]{Integer.MIN_VALUE, -1}, CursorPage.decode(CursorPage.encode(Integer.MIN_VALUE, -1), 2));
+	}
+
+	@Test
+	void malformedCursorsAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> CursorPage.decode("not base64!", 1));
+		assertThrows(IllegalArgumentException.class, () -> CursorPage.decode(CursorPage.encode(1, 2), 1));
+		String notANumber = Base64.getUrlEncoder().encodeToString("x".getBytes(StandardCharsets.UTF_8));
+		assertThrows(IllegalArgumentException.class, () -> CursorPage.decode(notANumber, 1));
+	}
+
+	@Test
+	void pageSizesAreClamped() {
+		assertEquals(CursorPage.DEFAULT_SIZE, CursorPage.pageSize(null));
+		assertEquals(1, CursorPage.pageSize(0));
+		assertEquals(CursorPage.MAX_SIZE, CursorPage.pageSize(10_000));
+	}
+}
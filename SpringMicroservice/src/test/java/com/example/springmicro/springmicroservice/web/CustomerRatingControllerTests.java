@@ -0,0 +1,81 @@
+package com.example.springmicro.springmicroservice.web;
+
+import com.example.springmicro.springmicroservice.domain.Tour;
+import com.example.springmicro.springmicroservice.domain.TourRating;
+import com.example.springmicro.springmicroservice.domain.TourRatingPk;
+import com.example.springmicro.springmicroservice.repository.TourRatingBatchRepository;
+import com.example.springmicro.springmicroservice.repository.TourRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/*
+ * The ratings of one customer across tours, written straight through the batch repository
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class CustomerRatingControllerTests {
+	private static final int CUSTOMER_ID = 7777;
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private TourRepository tourRepository;
+
+	@Autowired
+	private TourRatingBatchRepository tourRatingBatchRepository;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Test
+	void aCursorWalksTheRatingsOfACustomerInTourOrder() throws Exception {
+		List<Tour> rated = StreamSupport.stream(tourRepository.findAll().spliterator(), false)
+				.sorted(Comparator.comparing(Tour::getId)).limit(5).collect(Collectors.toList());
+		List<TourRating> ratings = new ArrayList<>();
+		rated.forEach(tour -> ratings.add(new TourRating(new TourRatingPk(tour, CUSTOMER_ID), 3, "by customer")));
+		tourRatingBatchRepository.insertAll(ratings);
+
+		List<Integer> tourIds = new ArrayList<>();
+		List<String> titles = new ArrayList<>();
+		int pages = 0;
+		for (String cursor = null; ; ) {
+			JsonNode page = objectMapper.readTree(mockMvc.perform(get("/customers/" + CUSTOMER_ID + "/ratings?size=2"
+							+ (cursor == null ? "" : "&cursor=" + cursor)))
+					.andExpect(status().isOk()).andReturn().getResponse().getContentAsString());
+			page.get("content").forEach(rating -> {
+				assertEquals(CUSTOMER_ID, rating.get("customerId").asInt());
+				tourIds.add(rating.get("tourId").asInt());
+				titles.add(rating.get("tourTitle").asText());
+			});
+			pages++;
+			if (page.get("nextCursor").isNull()) break;
+			cursor = page.get("nextCursor").asText();
+		}
+
+		assertEquals(3, pages);
+		assertEquals(rated.stream().map(Tour::getId).collect(Collectors.toList()), tourIds);
+		assertEquals(rated.stream().map(Tour::getTitle).collect(Collectors.toList()), titles);
+	}
+
+	@Test
+	void aCursorOfAnotherCustomerIsRejected() throws Exception {
+		mockMvc.perform(get("/customers/" + CUSTOMER_ID + "/ratings?cursor=" + CursorPage.encode(CUSTOMER_ID + 1, 1)))
+				.andExpect(status().isBadRequest());
+	}
+}
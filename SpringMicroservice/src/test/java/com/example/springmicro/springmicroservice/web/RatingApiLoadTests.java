@@ -0,0 +1,266 @@
+package com.example.springmicro.springmicroservice.web;
+
+import com.example.springmicro.springmicroservice.domain.Tour;
+import com.example.springmicro.springmicroservice.domain.TourRating;
+import com.example.springmicro.springmicroservice.domain.TourRatingPk;
+import com.example.springmicro.springmicroservice.repository.TourRepository;
+import com.example.springmicro.springmicroservice.service.RatingAggregateService;
+import com.example.springmicro.springmicroservice.service.TourLeaderboard;
+import com.example.springmicro.springmicroservice.service.TourRatingService;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Load test of the /tours/{tourId}/ratings endpoints; left out of the normal build, run it with
+ *   mvn -P load-test test [-Dloadtest.clients=64 -Dloadtest.duration-s=60 ...]
+ *
+ * The app starts on a random port with the imported tours, each seeded with ratings-per-tour ratings.
+ * clients threads send a weighted mix of requests (mix, e.g. create=10,put=10,patch=10,get=40,average=30)
+ * to random tours, each waiting for its response before sending the next, so the run finds the
+ * throughput ceiling at that concurrency. After warmup-s the latency of every request goes into the
+ * HdrHistogram of its endpoint for duration-s. Requests, errors, throughput and p50/p99/p99.9/max per
+ * endpoint are logged and written to target/load-test, with the percentile distribution of each endpoint.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class RatingApiLoadTests {
+	private static final Logger log = LoggerFactory.getLogger(RatingApiLoadTests.class);
+	private static final long MAX_LATENCY_NANOS = TimeUnit.SECONDS.toNanos(60);
+	private static final int PAGE_SIZE = 20;
+
+	private enum Endpoint {CREATE, PUT, PATCH, GET, AVERAGE}
+
+	@LocalServerPort
+	private int port;
+
+	@Value("${loadtest.clients:32}")
+	private int clients;
+
+	@Value("${loadtest.warmup-s:5}")
+	private int warmupSeconds;
+
+	@Value("${loadtest.duration-s:30}")
+	private int durationSeconds;
+
+	@Value("${loadtest.ratings-per-tour:1000}")
+	private int ratingsPerTour;
+
+	@Value("${loadtest.mix:create=10,put=10,patch=10,get=40,average=30}")
+	private String mix;
+
+	@Value("${loadtest.seed:42}")
+	private long seed;
+
+	@Autowired
+	private TourRepository tourRepository;
+
+	@Autowired
+	private TourRatingService tourRatingService;
+
+	@Autowired
+	private RatingAggregateService ratingAggregateService;
+
+	@Autowired
+	private TourLeaderboard tourLeaderboard;
+
+	private final Map<Endpoint, Recorder> recorders = new EnumMap<>(Endpoint.class);
+	private final AtomicLongArray errors = new AtomicLongArray(Endpoint.values().length);
+	// customers above the seeded ones, for the creates
+	private final AtomicInteger nextCustomerId = new AtomicInteger(10_000_000);
+	private volatile boolean recording;
+
+	@Test
+	void ratingEndpointsUnderLoad() throws Exception {
+		List<Integer> tourIds = seed();
+		int[] weights = weights();
+		for (Endpoint endpoint : Endpoint.values()) {
+			recorders.put(endpoint, new Recorder(MAX_LATENCY_NANOS, 3));
+		}
+		HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+		long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds + durationSeconds);
+		ExecutorService pool = Executors.newFixedThreadPool(clients);
+		List<Future<?>> running = new ArrayList<>();
+		for (int c = 0; c < clients; c++) {
+			Random random = new Random(seed + c);
+			running.add(pool.submit(() -> {
+				while (System.nanoTime() < end) {
+					send(client, pick(weights, random), tourIds.get(random.nextInt(tourIds.size())), random);
+				}
+				return null;
+			}));
+		}
+		TimeUnit.SECONDS.sleep(warmupSeconds);
+		for (Endpoint endpoint : Endpoint.values()) {
+			recorders.get(endpoint).reset();
+			errors.set(endpoint.ordinal(), 0);
+		}
+		recording = true;
+		long start = System.nanoTime();
+		for (Future<?> clientRun : running) {
+			clientRun.get();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		pool.shutdown();
+
+		long total = report(seconds);
+		assertTrue(total > 0, "requests were sent");
+		for (Endpoint endpoint : Endpoint.values()) {
+			assertEquals(0, errors.get(endpoint.ordinal()), "failed " + endpoint + " requests");
+		}
+	}
+
+	/*
+	 * Seeded ratings are written directly, then the aggregates and the leaderboard are rebuilt as on startup
+	 */
+	private List<Integer> seed() {
+		List<Integer> tourIds = new ArrayList<>();
+		Random random = new Random(seed);
+		for (Tour tour : tourRepository.findAll()) {
+			List<TourRating> ratings = new ArrayList<>(ratingsPerTour);
+			for (int customerId = 0; customerId < ratingsPerTour; customerId++) {
+				ratings.add(new TourRating(new TourRatingPk(tour, customerId), random.nextInt(6), "seeded"));
+			}
+			tourRatingService.createMissing(tour.getId(), ratings);
+			tourIds.add(tour.getId());
+		}
+		ratingAggregateService.rebuild();
+		tourLeaderboard.rebuild();
+		log.info("Seeded {} ratings on each of {} tours", ratingsPerTour, tourIds.size());
+		return tourIds;
+	}
+
+	private int[] weights() {
+		int[] weights = new int[Endpoint.values().length];
+		for (String entry : mix.split(",")) {
+			String[] weight = entry.trim().split("=");
+			weights[Endpoint.valueOf(weight[0].trim().toUpperCase(Locale.ROOT)).ordinal()] =
+					Integer.parseInt(weight[1].trim());
+		}
+		return weights;
+	}
+
+	private static Endpoint pick(int[] weights, Random random) {
+		int total = 0;
+		for (int weight : weights) total += weight;
+		int pick = random.nextInt(total);
+		for (Endpoint endpoint : Endpoint.values()) {
+			pick -= weights[endpoint.ordinal()];
+			if (pick < 0) return endpoint;
+		}
+		throw new IllegalStateException();
+	}
+
+	private void send(HttpClient client, Endpoint endpoint, int tourId, Random random) {
+		String base = "http://localhost:" + port + "/tours/" + tourId + "/ratings";
+		int score = random.nextInt(6);
+		int customerId = random.nextInt(ratingsPerTour);
+		HttpRequest request;
+		int expected = 200;
+		switch (endpoint) {
+			case CREATE:
+				request = json(base + "/createTourRating", "POST", "{\"score\":" + score
+						+ ",\"comment\":\"load test\",\"customerId\":" + nextCustomerId.getAndIncrement() + "}");
+				expected = 201;
+				break;
+			case PUT:
+				request = json(base + "/updateRatingWithPut", "PUT", "{\"score\":" + score
+						+ ",\"comment\":\"updated\",\"customerId\":" + customerId + "}");
+				break;
+			case PATCH:
+				request = json(base + "/updateRatingWithPatch", "PATCH", "{\"score\":" + score
+						+ ",\"customerId\":" + customerId + "}");
+				break;
+			case GET:
+				request = HttpRequest.newBuilder(URI.create(base + "/getAllRatingByPagingAndSorting?size=" + PAGE_SIZE
+						+ "&page=" + random.nextInt(Math.max(1, ratingsPerTour / PAGE_SIZE)))).GET().build();
+				break;
+			default:
+				request = HttpRequest.newBuilder(URI.create(base + "/average")).GET().build();
+		}
+		long start = System.nanoTime();
+		int status;
+		try {
+			status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+		} catch (IOException ex) {
+			status = -1;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		long latency = System.nanoTime() - start;
+		if (!recording) return;
+		recorders.get(endpoint).recordValue(Math.min(latency, MAX_LATENCY_NANOS));
+		if (status != expected) errors.incrementAndGet(endpoint.ordinal());
+	}
+
+	private static HttpRequest json(String uri, String method, String body) {
+		return HttpRequest.newBuilder(URI.create(uri)).header("Content-Type", "application/json")
+				.method(method, HttpRequest.BodyPublishers.ofString(body)).build();
+	}
+
+	private long report(double seconds) throws IOException {
+		Path directory = Paths.get("target", "load-test");
+		Files.createDirectories(directory);
+		StringBuilder summary = new StringBuilder(String.format(Locale.ROOT,
+				"%d clients for %.1f s%n%-8s %10s %8s %10s %9s %9s %9s %9s%n", clients, seconds,
+				"endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+		Histogram all = new Histogram(MAX_LATENCY_NANOS, 3);
+		for (Endpoint endpoint : Endpoint.values()) {
+			Histogram histogram = recorders.get(endpoint).getIntervalHistogram();
+			all.add(histogram);
+			summary.append(line(endpoint.name().toLowerCase(Locale.ROOT), histogram,
+					errors.get(endpoint.ordinal()), seconds));
+			try (PrintStream out = new PrintStream(
+					directory.resolve(endpoint.name().toLowerCase(Locale.ROOT) + ".hgrm").toFile())) {
+				histogram.outputPercentileDistribution(out, 1_000_000.0);
+			}
+		}
+		long failed = 0;
+		for (Endpoint endpoint : Endpoint.values()) failed += errors.get(endpoint.ordinal());
+		summary.append(line("all", all, failed, seconds));
+		Files.writeString(directory.resolve("summary.txt"), summary);
+		log.info("Rating API load test\n{}", summary);
+		return all.getTotalCount();
+	}
+
+	private static String line(String name, Histogram histogram, long errors, double seconds) {
+		return String.format(Locale.ROOT, "%-8s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f%n", name,
+				histogram.getTotalCount(), errors, histogram.getTotalCount() / seconds,
+				histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(99) / 1e6,
+				histogram.getValueAtPercentile(99.9) / 1e6, histogram.getMaxValue() / 1e6);
+	}
+}
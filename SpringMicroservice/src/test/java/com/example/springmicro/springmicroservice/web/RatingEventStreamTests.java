@@ -0,0 +1,143 @@
+package com.example.springmicro.springmicroservice.web;
+
+import com.example.springmicro.springmicroservice.domain.Tour;
+import com.example.springmicro.springmicroservice.domain.TourRatingChangedEvent;
+import com.example.springmicro.springmicroservice.repository.TourRepository;
+import com.example.springmicro.springmicroservice.service.RatingEventBroadcaster;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * The rating event stream over real connections, with one sender thread so that a sender waiting on
+ * a client would hold back every other subscriber
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"springmicroservice.ratings.events.sender-threads=1",
+		"springmicroservice.ratings.events.send-timeout-ms=500",
+		"springmicroservice.ratings.events.heartbeat-ms=100"})
+class RatingEventStreamTests {
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private TourRepository tourRepository;
+
+	@Autowired
+	private RatingEventBroadcaster ratingEventBroadcaster;
+
+	private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+	@Test
+	void ratingChangesArePushedToEventSubscribers() throws Exception {
+		Iterator<Tour> tours = tourRepository.findAll().iterator();
+		tours.next();
+		tours.next();
+		int tourId = tours.next().getId();
+		try (Stream<String> lines = subscribe(tourId)) {
+			StringBuffer stream = collect(lines);
+			awaitUntil(() -> stream.toString().contains("\"count\":"));
+			assertTrue(stream.toString().startsWith("event:aggregate\ndata:{\"count\":0"), stream.toString());
+
+			HttpResponse<Void> created = client.send(HttpRequest.newBuilder(URI.create(base(tourId) + "/createTourRating"))
+					.header("Content-Type", "application/json")
+					.POST(HttpRequest.BodyPublishers.ofString("{\"score\":4,\"customerId\":7}")).build(),
+					HttpResponse.BodyHandlers.discarding());
+			assertEquals(201, created.statusCode());
+
+			awaitUntil(() -> stream.toString().contains("\"count\":1"));
+			assertTrue(stream.toString().contains("event:rating\ndata:{\"type\":\"CREATED\",\"tourId\":" + tourId
+					+ ",\"customerId\":7,\"oldScore\":null,\"newScore\":4}"), stream.toString());
+			assertTrue(stream.toString().contains("event:aggregate\ndata:{\"count\":1,\"sum\":4"), stream.toString());
+		}
+	}
+
+	@Test
+	void subscribersThatDoNotReadAreDisconnectedWithoutHoldingBackTheOthers() throws Exception {
+		int tourId = tourRepository.findAll().iterator().next().getId();
+		long disconnected = ratingEventBroadcaster.getDisconnected();
+		int subscribed = ratingEventBroadcaster.getSubscriberCount();
+		List<Socket> stalled = new ArrayList<>();
+		try (Stream<String> lines = subscribe(tourId)) {
+			StringBuffer stream = collect(lines);
+			for (int i = 0; i < 2; i++) {
+				stalled.add(subscribeWithoutReading(tourId));
+			}
+			awaitUntil(() -> ratingEventBroadcaster.getSubscriberCount() == subscribed + 3);
+
+			// until their connections take no more and they are dropped
+			long deadline = System.currentTimeMillis() + 20_000;
+			for (int customerId = 0; ratingEventBroadcaster.getDisconnected() < disconnected + 2
+					&& System.currentTimeMillis() < deadline; customerId++) {
+				ratingEventBroadcaster.onRatingChanged(TourRatingChangedEvent.updated(tourId, customerId, 1, 2));
+				if (customerId % 50 == 0) Thread.sleep(5);
+			}
+			assertEquals(disconnected + 2, ratingEventBroadcaster.getDisconnected());
+
+			ratingEventBroadcaster.onRatingChanged(TourRatingChangedEvent.created(tourId, 424242, 5));
+			awaitUntil(() -> stream.toString().contains("\"customerId\":424242"));
+			assertEquals(subscribed + 1, ratingEventBroadcaster.getSubscriberCount());
+		} finally {
+			for (Socket socket : stalled) socket.close();
+		}
+	}
+
+	private String base(int tourId) {
+		return "http://localhost:" + port + "/tours/" + tourId + "/ratings";
+	}
+
+	private Stream<String> subscribe(int tourId) throws IOException, InterruptedException {
+		HttpResponse<Stream<String>> response = client.send(HttpRequest.newBuilder(URI.create(base(tourId) + "/events"))
+				.header("Accept", "text/event-stream").GET().build(), HttpResponse.BodyHandlers.ofLines());
+		assertEquals(200, response.statusCode());
+		return response.body();
+	}
+
+	/*
+	 * Sends the request and never reads the response, through a small receive buffer
+	 */
+	private Socket subscribeWithoutReading(int tourId) throws IOException {
+		Socket socket = new Socket();
+		socket.setReceiveBufferSize(1024);
+		socket.connect(new InetSocketAddress("localhost", port));
+		socket.getOutputStream().write(("GET /tours/" + tourId + "/ratings/events HTTP/1.1\r\nHost: localhost\r\n"
+				+ "Accept: text/event-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+		socket.getOutputStream().flush();
+		return socket;
+	}
+
+	private static StringBuffer collect(Stream<String> lines) {
+		StringBuffer stream = new StringBuffer();
+		Thread reader = new Thread(() -> lines.forEach(line -> stream.append(line).append('\n')));
+		reader.setDaemon(true);
+		reader.start();
+		return stream;
+	}
+
+	private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+		for (long deadline = System.currentTimeMillis() + 10_000;
+			 !condition.getAsBoolean() && System.currentTimeMillis() < deadline; ) {
+			Thread.sleep(20);
+		}
+		assertTrue(condition.getAsBoolean(), "condition not met in time");
+	}
+}
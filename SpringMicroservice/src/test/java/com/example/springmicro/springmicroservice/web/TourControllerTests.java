@@ -0,0 +1,109 @@
+package com.example.springmicro.springmicroservice.web;
+
+import com.example.springmicro.springmicroservice.domain.Tour;
+import com.example.springmicro.springmicroservice.repository.TourRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class TourControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private TourRepository tourRepository;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Test
+	void aCursorWalksEveryTourOnceInIdOrder() throws Exception {
+		List<Integer> expected = StreamSupport.stream(tourRepository.findAll().spliterator(), false)
+				.map(tour -> tour.getId()).sorted().collect(Collectors.toList());
+		assertTrue(expected.size() > 7);
+
+		List<Integer> ids = new ArrayList<>();
+		for (String cursor = null; ; ) {
+			JsonNode page = json("/tours/getAllTourByCursor?size=7" + (cursor == null ? "" : "&cursor=" + cursor));
+			page.get("content").forEach(tour -> ids.add(tour.get("id").asInt()));
+			if (page.get("nextCursor").isNull()) break;
+			cursor = page.get("nextCursor").asText();
+		}
+		assertEquals(expected, ids);
+	}
+
+	@Test
+	void aCursorCanBeLimitedToAPackage() throws Exception {
+		JsonNode page = json("/tours/getAllTourByCursor?packageCode=BC&size=100");
+		assertTrue(page.get("content").size() > 0);
+		page.get("content").forEach(tour -> assertEquals("BC", tour.get("tourPackageCode").asText()));
+		mockMvc.perform(get("/tours/getAllTourByCursor?cursor=garbage")).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void fullTextSearchLeavesTheRepositorySearchResourceAlone() throws Exception {
+		Tour tour = tourRepository.findAll().iterator().next();
+		JsonNode hits = json("/tours/fulltext?q=" + tour.getTitle().split(" ")[0] + "&limit=100");
+		assertTrue(StreamSupport.stream(hits.spliterator(), false).anyMatch(hit -> hit.get("id").asInt() == tour.getId()));
+
+		JsonNode search = json("/tours/search");
+		assertTrue(search.get("_links").has("findByTourPackageCode"), search.toString());
+	}
+
+	@Test
+	void histogramsCountTheRatingsOfEveryScore() throws Exception {
+		List<Integer> ids = StreamSupport.stream(tourRepository.findAll().spliterator(), false)
+				.map(tour -> tour.getId()).sorted().collect(Collectors.toList());
+		int tourId = ids.get(10), other = ids.get(11);
+		long[] before = histogram(json("/tours/" + tourId + "/ratings/histogram").get("histogram"));
+		int[] scores = {5, 5, 2, 0};
+		for (int i = 0; i < scores.length; i++) {
+			mockMvc.perform(post("/tours/" + tourId + "/ratings/createTourRating").contentType(MediaType.APPLICATION_JSON)
+					.content("{\"score\":" + scores[i] + ",\"customerId\":" + (501 + i) + "}"))
+					.andExpect(status().isCreated());
+		}
+
+		long[] expected = before.clone();
+		for (int score : scores) expected[score]++;
+		assertArrayEquals(expected, histogram(json("/tours/" + tourId + "/ratings/histogram").get("histogram")));
+		JsonNode batch = json("/tours/histograms?ids=" + tourId + "," + other + ",999999");
+		assertArrayEquals(expected, histogram(batch.get(Integer.toString(tourId))));
+		assertEquals(6, batch.get(Integer.toString(other)).size());
+		assertArrayEquals(new long[6], histogram(batch.get("999999")));
+
+		String tooMany = IntStream.rangeClosed(1, 101).mapToObj(Integer::toString).collect(Collectors.joining(","));
+		mockMvc.perform(get("/tours/histograms?ids=" + tooMany)).andExpect(status().isBadRequest());
+	}
+
+	private static long[] histogram(JsonNode counts) {
+		long[] histogram = new long[counts.size()];
+		for (int score = 0; score < histogram.length; score++) histogram[score] = counts.get(score).asLong();
+		return histogram;
+	}
+
+	private JsonNode json(String uri) throws Exception {
+		return objectMapper.readTree(mockMvc.perform(get(uri)).andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString());
+	}
+}
@@ -0,0 +1,220 @@
+package com.example.springmicro.springmicroservice.web;
+
+import com.example.springmicro.springmicroservice.domain.Tour;
+import com.example.springmicro.springmicroservice.domain.TourRating;
+import com.example.springmicro.springmicroservice.domain.TourRatingPk;
+import com.example.springmicro.springmicroservice.repository.TourRatingBatchRepository;
+import com.example.springmicro.springmicroservice.repository.TourRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+class TourRatingControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private TourRepository tourRepository;
+
+	@Autowired
+	private TourRatingBatchRepository tourRatingBatchRepository;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Test
+	void ratingReadsIssueConstantStatementCount() throws Exception {
+		Iterator<Tour> tours = tourRepository.findAll().iterator();
+		Tour fewRatings = tours.next();
+		Tour manyRatings = tours.next();
+		rate(fewRatings, 1);
+		rate(manyRatings, 200);
+
+		for (String path : List.of("/getAllRating", "/getAllRatingByPagingAndSorting?size=500",
+				"/getAllRatingByCursor?size=100", "/streamAllRating")) {
+			Statistics few = statisticsFor("/tours/" + fewRatings.getId() + "/ratings" + path);
+			long fewStatements = few.getPrepareStatementCount();
+			long fewEntities = few.getEntityLoadCount();
+			Statistics many = statisticsFor("/tours/" + manyRatings.getId() + "/ratings" + path);
+			assertEquals(fewStatements, many.getPrepareStatementCount(), "statements for " + path);
+			assertEquals(fewEntities, many.getEntityLoadCount(), "entities loaded for " + path);
+		}
+	}
+
+	@Test
+	void aListingIsNotModifiedUntilARatingOfItsTourIsWritten() throws Exception {
+		Iterator<Tour> tours = tourRepository.findAll().iterator();
+		for (int i = 0; i < 3; i++) tours.next();
+		String listing = "/tours/" + tours.next().getId() + "/ratings/getAllRating";
+		String etag = mockMvc.perform(get(listing)).andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		mockMvc.perform(get(listing).header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(status().isNotModified());
+
+		mockMvc.perform(post(listing.replace("getAllRating", "createTourRating"))
+				.contentType(MediaType.APPLICATION_JSON).content("{\"score\":3,\"customerId\":9}"))
+				.andExpect(status().isCreated());
+		mockMvc.perform(get(listing).header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString("\"customerId\":9")));
+	}
+
+	@Test
+	void bulkCreationReportsTheOutcomeOfEveryRating() throws Exception {
+		Iterator<Tour> tours = tourRepository.findAll().iterator();
+		for (int i = 0; i < 4; i++) tours.next();
+		String ratings = "/tours/" + tours.next().getId() + "/ratings";
+		mockMvc.perform(post(ratings + "/createTourRating")
+				.contentType(MediaType.APPLICATION_JSON).content("{\"score\":5,\"customerId\":1}"))
+				.andExpect(status().isCreated());
+
+		mockMvc.perform(post(ratings + "/bulk").contentType(MediaType.APPLICATION_JSON).content("["
+						+ "{\"score\":4,\"customerId\":1},"
+						+ "{\"score\":4,\"customerId\":2,\"comment\":\"bulk\"},"
+						+ "{\"score\":9,\"customerId\":3},"
+						+ "{\"score\":3,\"customerId\":2},"
+						+ "{\"customerId\":4}]"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].status").value("ALREADY_EXISTS"))
+				.andExpect(jsonPath("$[1].status").value("CREATED"))
+				.andExpect(jsonPath("$[2].status").value("INVALID"))
+				.andExpect(jsonPath("$[3].status").value("ALREADY_EXISTS"))
+				.andExpect(jsonPath("$[4].status").value("INVALID"));
+
+		mockMvc.perform(get(ratings + "/getAllRating"))
+				.andExpect(jsonPath("$.length()").value(2))
+				.andExpect(content().string(containsString("\"comment\":\"bulk\"")));
+	}
+
+	@Test
+	void aCursorWalksEveryRatingOfItsTourOnce() throws Exception {
+		Iterator<Tour> tours = tourRepository.findAll().iterator();
+		for (int i = 0; i < 6; i++) tours.next();
+		Tour tour = tours.next();
+		rate(tour, 25);
+		String ratings = "/tours/" + tour.getId() + "/ratings/getAllRatingByCursor?size=10";
+
+		List<Integer> customerIds = new ArrayList<>();
+		String cursor = null;
+		int pages = 0;
+		do {
+			JsonNode page = objectMapper.readTree(mockMvc.perform(get(ratings + (cursor == null ? "" : "&cursor=" + cursor)))
+					.andExpect(status().isOk()).andReturn().getResponse().getContentAsString());
+			page.get("content").forEach(rating -> customerIds.add(rating.get("customerId").asInt()));
+			cursor = page.get("nextCursor").isNull() ? null : page.get("nextCursor").asText();
+			pages++;
+		} while (cursor != null);
+
+		assertEquals(3, pages);
+		assertEquals(IntStream.rangeClosed(1, 25).boxed().collect(Collectors.toList()), customerIds);
+		mockMvc.perform(get("/tours/" + tours.next().getId() + "/ratings/getAllRatingByCursor?cursor="
+				+ CursorPage.encode(tour.getId(), 10))).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void ratingsAreStreamedOnePerLine() throws Exception {
+		Iterator<Tour> tours = tourRepository.findAll().iterator();
+		for (int i = 0; i < 8; i++) tours.next();
+		Tour tour = tours.next();
+		rate(tour, 30);
+
+		String body = mockMvc.perform(get("/tours/" + tour.getId() + "/ratings/streamAllRating"))
+				.andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+				.andReturn().getResponse().getContentAsString();
+		List<Integer> customerIds = new ArrayList<>();
+		for (String line : body.split("\n")) {
+			JsonNode rating = objectMapper.readTree(line);
+			assertEquals(rating.get("customerId").asInt() % 6, rating.get("score").asInt());
+			customerIds.add(rating.get("customerId").asInt());
+		}
+		assertEquals(IntStream.rangeClosed(1, 30).boxed().collect(Collectors.toList()), customerIds);
+	}
+
+	@Test
+	void aRatingWithoutScoreIsNotCreated() throws Exception {
+		int tourId = tourRepository.findAll().iterator().next().getId();
+		mockMvc.perform(post("/tours/" + tourId + "/ratings/createTourRating")
+				.contentType(MediaType.APPLICATION_JSON).content("{\"customerId\":8}"))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(get("/tours/" + tourId + "/ratings/getAllRating"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(not(containsString("\"customerId\":8"))));
+	}
+
+	@Test
+	void anUpdateOutOfRangeIsRejectedAndLeavesTheRatingAlone() throws Exception {
+		Iterator<Tour> tours = tourRepository.findAll().iterator();
+		tours.next();
+		tours.next();
+		String ratings = "/tours/" + tours.next().getId() + "/ratings";
+		mockMvc.perform(post(ratings + "/createTourRating")
+				.contentType(MediaType.APPLICATION_JSON).content("{\"score\":4,\"customerId\":4242,\"comment\":\"fine\"}"))
+				.andExpect(status().isCreated());
+
+		mockMvc.perform(put(ratings + "/updateRatingWithPut")
+				.contentType(MediaType.APPLICATION_JSON).content("{\"score\":9,\"customerId\":4242}"))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(patch(ratings + "/updateRatingWithPatch")
+				.contentType(MediaType.APPLICATION_JSON).content("{\"score\":-1,\"customerId\":4242}"))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(patch(ratings + "/updateRatingWithPatch")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"customerId\":4242,\"comment\":\"" + "x".repeat(256) + "\"}"))
+				.andExpect(status().isBadRequest());
+
+		JsonNode rating = objectMapper.readTree(mockMvc.perform(get(ratings + "/getAllRating"))
+				.andReturn().getResponse().getContentAsString()).findParents("customerId").stream()
+				.filter(node -> node.get("customerId").asInt() == 4242).findFirst().orElseThrow();
+		assertEquals(4, rating.get("score").asInt());
+		assertEquals("fine", rating.get("comment").asText());
+		mockMvc.perform(get(ratings + "/average")).andExpect(jsonPath("$.average").value(4.0));
+	}
+
+	private void rate(Tour tour, int customers) {
+		List<TourRating> ratings = new ArrayList<>();
+		for (int customerId = 1; customerId <= customers; customerId++) {
+			ratings.add(new TourRating(new TourRatingPk(tour, customerId), customerId % 6, null));
+		}
+		tourRatingBatchRepository.insertAll(ratings);
+	}
+
+	private Statistics statisticsFor(String uri) throws Exception {
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		mockMvc.perform(get(uri)).andExpect(status().isOk());
+		return statistics;
+	}
+}